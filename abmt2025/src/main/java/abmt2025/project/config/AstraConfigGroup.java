@@ -30,6 +30,54 @@ public class AstraConfigGroup extends ReflectiveConfigGroup {
 	static public final String TRAVEL_TIME_ESTIMATION_ALPHA = "travelTimeEstimationAlpha";
 	static public final String CONSIDER_CONVERGENCE_CRITERIA = "considerConvergenceCriteria";
 
+	static public final String PARALLEL_TRAVEL_TIME_CONSOLIDATION = "parallelTravelTimeConsolidation";
+	static public final String TRAVEL_TIME_SNAPSHOT_HISTORY = "travelTimeSnapshotHistory";
+	static public final String TRAVEL_TIME_WRITE_INTERVAL = "travelTimeWriteInterval";
+	static public final String TRAVEL_TIME_INPUT_PATH = "travelTimeInputPath";
+	static public final String TRAVEL_TIME_BIN_SIZE = "travelTimeBinSize";
+	static public final String TRAVEL_TIME_INTERPOLATION = "travelTimeInterpolation";
+
+	static public final String DRT_SERVICE_AREA_BACKEND = "drtServiceAreaBackend";
+	static public final String PRECOMPUTE_DRT_SERVICE_AREA_MEMBERSHIP = "precomputeDrtServiceAreaMembership";
+	static public final String DRT_ROUTE_CACHE_SIZE = "drtRouteCacheSize";
+	static public final String DRT_ROUTE_CACHE_TIME_BIN = "drtRouteCacheTimeBin";
+
+	static public final String OVGK_CACHE_PATH = "ovgkCachePath";
+	static public final String PRECOMPUTE_OVGK = "precomputeOvgk";
+
+	static public final String DRT_PREDICTION_MODE = "drtPredictionMode";
+	static public final String DRT_PREDICTION_ZONE_SIZE = "drtPredictionZoneSize";
+	static public final String DRT_PREDICTION_TIME_BIN = "drtPredictionTimeBin";
+
+	static public final String MODE_CHOICE_AUDIT_INTERVAL = "modeChoiceAuditInterval";
+	static public final String MODE_CHOICE_AUDIT_THREADS = "modeChoiceAuditThreads";
+
+	static public final String UPDATE_HEADWAYS = "updateHeadways";
+	static public final String HEADWAY_UPDATE_TOLERANCE = "headwayUpdateTolerance";
+	static public final String HEADWAY_INTERVAL = "headwayInterval";
+
+	/**
+	 * Point-in-polygon test used by the DRT service area filter.
+	 */
+	public enum DrtServiceAreaBackend {
+		/** Geometry.contains on the unioned service area */
+		PLAIN,
+		/** Indexed point-in-area locator on the unioned service area */
+		PREPARED,
+		/** STRtree over the individual shape file features, each with its own locator */
+		STRTREE
+	}
+
+	/**
+	 * Where the DRT waiting and in-vehicle times come from.
+	 */
+	public enum DrtPredictionMode {
+		/** Maximum wait and travel time of the DRT route (constraint bounds) */
+		ROUTE_BOUNDS,
+		/** Smoothed observations of previous iterations, route bounds until available */
+		OBSERVED
+	}
+
 	private int fleetSize = 0;
 	private String operatingAreaPath = null;
 	private String operatingAreaIndexAttribute = "wgIndex";
@@ -55,6 +103,32 @@ public class AstraConfigGroup extends ReflectiveConfigGroup {
 
 	private boolean considerConvergenceCriteria = true;
 
+	private boolean parallelTravelTimeConsolidation = false;
+	private int travelTimeSnapshotHistory = 0;
+	private int travelTimeWriteInterval = 0;
+	private String travelTimeInputPath = null;
+	private double travelTimeBinSize = 0.0;
+	private boolean travelTimeInterpolation = false;
+
+	private DrtServiceAreaBackend drtServiceAreaBackend = DrtServiceAreaBackend.PREPARED;
+	private boolean precomputeDrtServiceAreaMembership = false;
+	private int drtRouteCacheSize = 0;
+	private double drtRouteCacheTimeBin = 300.0;
+
+	private String ovgkCachePath = null;
+	private boolean precomputeOvgk = false;
+
+	private DrtPredictionMode drtPredictionMode = DrtPredictionMode.ROUTE_BOUNDS;
+	private double drtPredictionZoneSize = 2000.0;
+	private double drtPredictionTimeBin = 1800.0;
+
+	private int modeChoiceAuditInterval = 0;
+	private int modeChoiceAuditThreads = 0;
+
+	private boolean updateHeadways = false;
+	private double headwayUpdateTolerance = 300.0;
+	private double headwayInterval = 7200.0;
+
 	public AstraConfigGroup() {
 		super(GROUP_NAME);
 	}
@@ -229,6 +303,206 @@ public class AstraConfigGroup extends ReflectiveConfigGroup {
 		this.considerConvergenceCriteria = considerConvergenceCriteria;
 	}
 
+	@StringGetter(PARALLEL_TRAVEL_TIME_CONSOLIDATION)
+	public boolean getParallelTravelTimeConsolidation() {
+		return parallelTravelTimeConsolidation;
+	}
+
+	@StringSetter(PARALLEL_TRAVEL_TIME_CONSOLIDATION)
+	public void setParallelTravelTimeConsolidation(boolean parallelTravelTimeConsolidation) {
+		this.parallelTravelTimeConsolidation = parallelTravelTimeConsolidation;
+	}
+
+	@StringGetter(TRAVEL_TIME_SNAPSHOT_HISTORY)
+	public int getTravelTimeSnapshotHistory() {
+		return travelTimeSnapshotHistory;
+	}
+
+	@StringSetter(TRAVEL_TIME_SNAPSHOT_HISTORY)
+	public void setTravelTimeSnapshotHistory(int travelTimeSnapshotHistory) {
+		this.travelTimeSnapshotHistory = travelTimeSnapshotHistory;
+	}
+
+	@StringGetter(TRAVEL_TIME_WRITE_INTERVAL)
+	public int getTravelTimeWriteInterval() {
+		return travelTimeWriteInterval;
+	}
+
+	@StringSetter(TRAVEL_TIME_WRITE_INTERVAL)
+	public void setTravelTimeWriteInterval(int travelTimeWriteInterval) {
+		this.travelTimeWriteInterval = travelTimeWriteInterval;
+	}
+
+	@StringGetter(TRAVEL_TIME_INPUT_PATH)
+	public String getTravelTimeInputPath() {
+		return travelTimeInputPath;
+	}
+
+	@StringSetter(TRAVEL_TIME_INPUT_PATH)
+	public void setTravelTimeInputPath(String travelTimeInputPath) {
+		this.travelTimeInputPath = travelTimeInputPath;
+	}
+
+	@StringGetter(TRAVEL_TIME_BIN_SIZE)
+	public double getTravelTimeBinSize() {
+		return travelTimeBinSize;
+	}
+
+	@StringSetter(TRAVEL_TIME_BIN_SIZE)
+	public void setTravelTimeBinSize(double travelTimeBinSize) {
+		this.travelTimeBinSize = travelTimeBinSize;
+	}
+
+	@StringGetter(TRAVEL_TIME_INTERPOLATION)
+	public boolean getTravelTimeInterpolation() {
+		return travelTimeInterpolation;
+	}
+
+	@StringSetter(TRAVEL_TIME_INTERPOLATION)
+	public void setTravelTimeInterpolation(boolean travelTimeInterpolation) {
+		this.travelTimeInterpolation = travelTimeInterpolation;
+	}
+
+	@StringGetter(DRT_SERVICE_AREA_BACKEND)
+	public DrtServiceAreaBackend getDrtServiceAreaBackend() {
+		return drtServiceAreaBackend;
+	}
+
+	@StringSetter(DRT_SERVICE_AREA_BACKEND)
+	public void setDrtServiceAreaBackend(DrtServiceAreaBackend drtServiceAreaBackend) {
+		this.drtServiceAreaBackend = drtServiceAreaBackend;
+	}
+
+	@StringGetter(PRECOMPUTE_DRT_SERVICE_AREA_MEMBERSHIP)
+	public boolean getPrecomputeDrtServiceAreaMembership() {
+		return precomputeDrtServiceAreaMembership;
+	}
+
+	@StringSetter(PRECOMPUTE_DRT_SERVICE_AREA_MEMBERSHIP)
+	public void setPrecomputeDrtServiceAreaMembership(boolean precomputeDrtServiceAreaMembership) {
+		this.precomputeDrtServiceAreaMembership = precomputeDrtServiceAreaMembership;
+	}
+
+	@StringGetter(DRT_ROUTE_CACHE_SIZE)
+	public int getDrtRouteCacheSize() {
+		return drtRouteCacheSize;
+	}
+
+	@StringSetter(DRT_ROUTE_CACHE_SIZE)
+	public void setDrtRouteCacheSize(int drtRouteCacheSize) {
+		this.drtRouteCacheSize = drtRouteCacheSize;
+	}
+
+	@StringGetter(DRT_ROUTE_CACHE_TIME_BIN)
+	public double getDrtRouteCacheTimeBin() {
+		return drtRouteCacheTimeBin;
+	}
+
+	@StringSetter(DRT_ROUTE_CACHE_TIME_BIN)
+	public void setDrtRouteCacheTimeBin(double drtRouteCacheTimeBin) {
+		this.drtRouteCacheTimeBin = drtRouteCacheTimeBin;
+	}
+
+	@StringGetter(OVGK_CACHE_PATH)
+	public String getOvgkCachePath() {
+		return ovgkCachePath;
+	}
+
+	@StringSetter(OVGK_CACHE_PATH)
+	public void setOvgkCachePath(String ovgkCachePath) {
+		this.ovgkCachePath = ovgkCachePath;
+	}
+
+	@StringGetter(PRECOMPUTE_OVGK)
+	public boolean getPrecomputeOvgk() {
+		return precomputeOvgk;
+	}
+
+	@StringSetter(PRECOMPUTE_OVGK)
+	public void setPrecomputeOvgk(boolean precomputeOvgk) {
+		this.precomputeOvgk = precomputeOvgk;
+	}
+
+	@StringGetter(DRT_PREDICTION_MODE)
+	public DrtPredictionMode getDrtPredictionMode() {
+		return drtPredictionMode;
+	}
+
+	@StringSetter(DRT_PREDICTION_MODE)
+	public void setDrtPredictionMode(DrtPredictionMode drtPredictionMode) {
+		this.drtPredictionMode = drtPredictionMode;
+	}
+
+	@StringGetter(DRT_PREDICTION_ZONE_SIZE)
+	public double getDrtPredictionZoneSize() {
+		return drtPredictionZoneSize;
+	}
+
+	@StringSetter(DRT_PREDICTION_ZONE_SIZE)
+	public void setDrtPredictionZoneSize(double drtPredictionZoneSize) {
+		this.drtPredictionZoneSize = drtPredictionZoneSize;
+	}
+
+	@StringGetter(DRT_PREDICTION_TIME_BIN)
+	public double getDrtPredictionTimeBin() {
+		return drtPredictionTimeBin;
+	}
+
+	@StringSetter(DRT_PREDICTION_TIME_BIN)
+	public void setDrtPredictionTimeBin(double drtPredictionTimeBin) {
+		this.drtPredictionTimeBin = drtPredictionTimeBin;
+	}
+
+	@StringGetter(MODE_CHOICE_AUDIT_INTERVAL)
+	public int getModeChoiceAuditInterval() {
+		return modeChoiceAuditInterval;
+	}
+
+	@StringSetter(MODE_CHOICE_AUDIT_INTERVAL)
+	public void setModeChoiceAuditInterval(int modeChoiceAuditInterval) {
+		this.modeChoiceAuditInterval = modeChoiceAuditInterval;
+	}
+
+	@StringGetter(MODE_CHOICE_AUDIT_THREADS)
+	public int getModeChoiceAuditThreads() {
+		return modeChoiceAuditThreads;
+	}
+
+	@StringSetter(MODE_CHOICE_AUDIT_THREADS)
+	public void setModeChoiceAuditThreads(int modeChoiceAuditThreads) {
+		this.modeChoiceAuditThreads = modeChoiceAuditThreads;
+	}
+
+	@StringGetter(UPDATE_HEADWAYS)
+	public boolean getUpdateHeadways() {
+		return updateHeadways;
+	}
+
+	@StringSetter(UPDATE_HEADWAYS)
+	public void setUpdateHeadways(boolean updateHeadways) {
+		this.updateHeadways = updateHeadways;
+	}
+
+	@StringGetter(HEADWAY_UPDATE_TOLERANCE)
+	public double getHeadwayUpdateTolerance() {
+		return headwayUpdateTolerance;
+	}
+
+	@StringSetter(HEADWAY_UPDATE_TOLERANCE)
+	public void setHeadwayUpdateTolerance(double headwayUpdateTolerance) {
+		this.headwayUpdateTolerance = headwayUpdateTolerance;
+	}
+
+	@StringGetter(HEADWAY_INTERVAL)
+	public double getHeadwayInterval() {
+		return headwayInterval;
+	}
+
+	@StringSetter(HEADWAY_INTERVAL)
+	public void setHeadwayInterval(double headwayInterval) {
+		this.headwayInterval = headwayInterval;
+	}
+
 	static public AstraConfigGroup get(Config config) {
 		if (!config.getModules().containsKey(GROUP_NAME)) {
 			config.addModule(new AstraConfigGroup());
@@ -16,6 +16,9 @@ import org.matsim.core.config.CommandLine;
 import org.matsim.core.config.CommandLine.ConfigurationException;
 import org.matsim.core.router.costcalculators.RandomizingTimeDistanceTravelDisutilityFactory;
 import org.matsim.core.router.costcalculators.TravelDisutilityFactory;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.Config;
+import org.matsim.facilities.ActivityFacilities;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
 
 import com.google.inject.Provider;
@@ -24,15 +27,18 @@ import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import com.google.inject.name.Names;
 
+import abmt2025.project.config.AstraConfigGroup;
 import abmt2025.project.mode_choice.estimators.AstraBikeUtilityEstimator_Baseline;
 import abmt2025.project.mode_choice.estimators.AstraCarUtilityEstimator_Baseline;
 import abmt2025.project.mode_choice.estimators.AstraPtUtilityEstimator_Baseline;
 import abmt2025.project.mode_choice.estimators.AstraWalkUtilityEstimator_Baseline;
+import abmt2025.project.mode_choice.ovgk.CachedOVGKCalculator;
 import abmt2025.project.mode_choice.predictors.AstraBikePredictor;
 import abmt2025.project.mode_choice.predictors.AstraPersonPredictor;
 import abmt2025.project.mode_choice.predictors.AstraPtPredictor;
 import abmt2025.project.mode_choice.predictors.AstraTripPredictor;
 import abmt2025.project.mode_choice.predictors.AstraWalkPredictor;
+import abmt2025.project.utils.headway.HeadwayUpdateListener;
 
 public class AstraModule_Baseline extends AbstractEqasimExtension {
 	private final CommandLine commandLine;
@@ -61,6 +67,13 @@ public class AstraModule_Baseline extends AbstractEqasimExtension {
 		bind(SwissModeAvailability.class);
 		bindModeAvailability(AstraModeAvailability_Baseline.NAME).to(AstraModeAvailability_Baseline.class);
 
+		if (AstraConfigGroup.get(getConfig()).getModeChoiceAuditInterval() > 0) {
+			addControlerListenerBinding().to(ModeChoiceAuditListener.class);
+		}
+
+		if (AstraConfigGroup.get(getConfig()).getUpdateHeadways()) {
+			addControlerListenerBinding().to(HeadwayUpdateListener.class);
+		}
 	}
 
 
@@ -80,8 +93,9 @@ public class AstraModule_Baseline extends AbstractEqasimExtension {
 
 	@Provides
 	@Singleton
-	public OVGKCalculator provideOVGKCalculator(TransitSchedule transitSchedule) {
-		return new OVGKCalculator(transitSchedule);
+	public OVGKCalculator provideOVGKCalculator(Config config, TransitSchedule transitSchedule, Population population,
+			ActivityFacilities facilities) {
+		return CachedOVGKCalculator.create(config, transitSchedule, population, facilities);
 	}
 
 	@Provides
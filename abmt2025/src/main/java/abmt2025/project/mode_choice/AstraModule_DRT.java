@@ -14,6 +14,10 @@ import org.eqasim.switzerland.mode_choice.parameters.SwissModeParameters;
 import org.eqasim.switzerland.ovgk.OVGKCalculator;
 import org.matsim.core.config.CommandLine;
 import org.matsim.core.config.CommandLine.ConfigurationException;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.Config;
+import org.matsim.facilities.ActivityFacilities;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
 
 import com.google.inject.Provider;
@@ -21,18 +25,22 @@ import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 
+import abmt2025.project.config.AstraConfigGroup;
 import abmt2025.project.mode_choice.costs.DRTCostModel;
 import abmt2025.project.mode_choice.estimators.AstraBikeUtilityEstimator_DRT;
 import abmt2025.project.mode_choice.estimators.AstraCarUtilityEstimator_DRT;
 import abmt2025.project.mode_choice.estimators.AstraPtUtilityEstimator_DRT;
 import abmt2025.project.mode_choice.estimators.AstraWalkUtilityEstimator_DRT;
 import abmt2025.project.mode_choice.estimators.DRTUtilityEstimator;
+import abmt2025.project.mode_choice.ovgk.CachedOVGKCalculator;
 import abmt2025.project.mode_choice.predictors.AstraBikePredictor;
 import abmt2025.project.mode_choice.predictors.AstraPersonPredictor;
 import abmt2025.project.mode_choice.predictors.AstraPtPredictor;
 import abmt2025.project.mode_choice.predictors.AstraTripPredictor;
 import abmt2025.project.mode_choice.predictors.AstraWalkPredictor;
 import abmt2025.project.mode_choice.predictors.DRTPredictor;
+import abmt2025.project.travel_time.ObservedDrtTimes;
+import abmt2025.project.utils.headway.HeadwayUpdateListener;
 
 public class AstraModule_DRT extends AbstractEqasimExtension {
 	private final CommandLine commandLine;
@@ -67,6 +75,19 @@ public class AstraModule_DRT extends AbstractEqasimExtension {
 		bind(SwissModeAvailability.class);
 		bindModeAvailability(AstraModeAvailability_DRT.NAME).to(AstraModeAvailability_DRT.class);
 
+		if (AstraConfigGroup.get(getConfig()).getDrtPredictionMode() == AstraConfigGroup.DrtPredictionMode.OBSERVED) {
+			addEventHandlerBinding().to(ObservedDrtTimes.class);
+			addControlerListenerBinding().to(ObservedDrtTimes.class);
+		}
+
+		if (AstraConfigGroup.get(getConfig()).getModeChoiceAuditInterval() > 0) {
+			addControlerListenerBinding().to(ModeChoiceAuditListener.class);
+		}
+
+		if (AstraConfigGroup.get(getConfig()).getUpdateHeadways()) {
+			addControlerListenerBinding().to(HeadwayUpdateListener.class);
+		}
+
 	}
 
 	@Provides
@@ -98,8 +119,19 @@ public class AstraModule_DRT extends AbstractEqasimExtension {
 
 	@Provides
 	@Singleton
-	public OVGKCalculator provideOVGKCalculator(TransitSchedule transitSchedule) {
-		return new OVGKCalculator(transitSchedule);
+	public OVGKCalculator provideOVGKCalculator(Config config, TransitSchedule transitSchedule, Population population,
+			ActivityFacilities facilities) {
+		return CachedOVGKCalculator.create(config, transitSchedule, population, facilities);
+	}
+
+	@Provides
+	@Singleton
+	public ObservedDrtTimes provideObservedDrtTimes(Network network, Config config) {
+		AstraConfigGroup astraConfig = AstraConfigGroup.get(config);
+
+		return new ObservedDrtTimes("drt", 0.0, config.travelTimeCalculator().getMaxTime(),
+				astraConfig.getDrtPredictionTimeBin(), astraConfig.getDrtPredictionZoneSize(),
+				astraConfig.getWaitingTimeEstimationAlpha(), astraConfig.getTravelTimeEstimationAlpha(), network);
 	}
 
 	@Provides
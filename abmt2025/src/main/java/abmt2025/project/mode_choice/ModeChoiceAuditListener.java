@@ -0,0 +1,202 @@
+package abmt2025.project.mode_choice;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.contribs.discrete_mode_choice.model.DiscreteModeChoiceModel;
+import org.matsim.core.config.Config;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.ReplanningEvent;
+import org.matsim.core.controler.listener.ReplanningListener;
+import org.matsim.core.utils.io.IOUtils;
+
+import com.google.inject.Binding;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.Scopes;
+
+import abmt2025.project.config.AstraConfigGroup;
+import abmt2025.project.mode_choice.routing.DrtRouteCache;
+
+/**
+ * Debug mode that checks the mode choice stack for concurrency-induced
+ * nondeterminism, enabled by modeChoiceAuditInterval in the astra config group.
+ *
+ * Before replanning in every n-th iteration, the mode choice model is run twice
+ * on the selected plans of all persons with the same seeds: with one thread and
+ * with modeChoiceAuditThreads threads (the global number of threads if 0). The
+ * chosen modes and the utilities are compared bit by bit per trip, differences
+ * are written to mode_choice_audit.csv in the iteration directory. Plans are
+ * not changed by the audit. The DRT route cache, if bound, is cleared before
+ * each of the two runs, so that both route with an empty cache, and after the
+ * audit, so that the replanning that follows does not see routes cached by it.
+ *
+ * At the first audit, the scopes of the bindings of this project are logged, so
+ * that it is visible which components are shared between replanning threads.
+ */
+public class ModeChoiceAuditListener implements ReplanningListener {
+	private static final Logger log = LogManager.getLogger(ModeChoiceAuditListener.class);
+
+	static public final String FILE_NAME = "mode_choice_audit.csv";
+
+	private final Population population;
+	private final Provider<DiscreteModeChoiceModel> modelProvider;
+	private final OutputDirectoryHierarchy outputHierarchy;
+	private final Injector injector;
+
+	private final int interval;
+	private final int numberOfThreads;
+	private final long randomSeed;
+
+	private DrtRouteCache routeCache;
+
+	private boolean bindingsLogged = false;
+
+	@Inject
+	public ModeChoiceAuditListener(Population population, Provider<DiscreteModeChoiceModel> modelProvider,
+			OutputDirectoryHierarchy outputHierarchy, Injector injector, Config config) {
+		this.population = population;
+		this.modelProvider = modelProvider;
+		this.outputHierarchy = outputHierarchy;
+		this.injector = injector;
+
+		AstraConfigGroup astraConfig = AstraConfigGroup.get(config);
+		this.interval = astraConfig.getModeChoiceAuditInterval();
+		this.numberOfThreads = astraConfig.getModeChoiceAuditThreads() > 0 ? astraConfig.getModeChoiceAuditThreads()
+				: config.global().getNumberOfThreads();
+		this.randomSeed = config.global().getRandomSeed();
+	}
+
+	@Inject(optional = true)
+	public void setRouteCache(DrtRouteCache routeCache) {
+		this.routeCache = routeCache;
+	}
+
+	@Override
+	public void notifyReplanning(ReplanningEvent event) {
+		if (interval <= 0 || event.getIteration() % interval != 0) {
+			return;
+		}
+
+		if (!bindingsLogged) {
+			logBindingScopes();
+			bindingsLogged = true;
+		}
+
+		List<Person> persons = new ArrayList<>(population.getPersons().values());
+		persons.sort(Comparator.comparing(Person::getId));
+
+		ModeChoiceRunner runner = new ModeChoiceRunner(modelProvider, randomSeed + event.getIteration());
+		ModeChoiceRunner.Result sequential;
+		ModeChoiceRunner.Result parallel;
+
+		try {
+			clearRouteCache();
+			sequential = runner.run(persons, 1, true);
+			clearRouteCache();
+			parallel = runner.run(persons, numberOfThreads, true);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} finally {
+			clearRouteCache();
+		}
+
+		long numberOfComparedTrips = 0;
+		long numberOfModeDifferences = 0;
+		long numberOfUtilityDifferences = 0;
+		long numberOfFailureDifferences = 0;
+
+		String outputPath = outputHierarchy.getIterationFilename(event.getIteration(), FILE_NAME);
+
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(outputPath)) {
+			writer.write("personId;tripIndex;sequentialMode;parallelMode;sequentialUtility;parallelUtility\n");
+
+			for (int personIndex = 0; personIndex < persons.size(); personIndex++) {
+				String personId = persons.get(personIndex).getId().toString();
+
+				String[] sequentialModes = sequential.getModes(personIndex);
+				String[] parallelModes = parallel.getModes(personIndex);
+				double[] sequentialUtilities = sequential.getUtilities(personIndex);
+				double[] parallelUtilities = parallel.getUtilities(personIndex);
+
+				if (sequentialModes == null || parallelModes == null) {
+					if (sequentialModes != parallelModes) {
+						// Choice failed in one of the runs only
+						numberOfFailureDifferences++;
+						writer.write(personId + ";;" + (sequentialModes == null ? "failed" : "") + ";"
+								+ (parallelModes == null ? "failed" : "") + ";;\n");
+					}
+
+					continue;
+				}
+
+				for (int tripIndex = 0; tripIndex < sequentialModes.length; tripIndex++) {
+					numberOfComparedTrips++;
+
+					boolean sameMode = sequentialModes[tripIndex].equals(parallelModes[tripIndex]);
+					boolean sameUtility = Double.doubleToLongBits(sequentialUtilities[tripIndex]) == Double
+							.doubleToLongBits(parallelUtilities[tripIndex]);
+
+					if (!sameMode) {
+						numberOfModeDifferences++;
+					}
+
+					if (!sameUtility) {
+						numberOfUtilityDifferences++;
+					}
+
+					if (!sameMode || !sameUtility) {
+						writer.write(String.join(";", personId, String.valueOf(tripIndex),
+								sequentialModes[tripIndex], parallelModes[tripIndex],
+								String.valueOf(sequentialUtilities[tripIndex]),
+								String.valueOf(parallelUtilities[tripIndex])) + "\n");
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		if (numberOfModeDifferences > 0 || numberOfUtilityDifferences > 0 || numberOfFailureDifferences > 0) {
+			log.warn(
+					"Mode choice audit in iteration {}: 1 vs {} threads differ in {} modes, {} utilities and {} failed choices out of {} trips, see {}",
+					event.getIteration(), numberOfThreads, numberOfModeDifferences, numberOfUtilityDifferences,
+					numberOfFailureDifferences, numberOfComparedTrips, outputPath);
+		} else {
+			log.info("Mode choice audit in iteration {}: 1 vs {} threads identical for {} trips ({} vs {} trips/s)",
+					event.getIteration(), numberOfThreads, numberOfComparedTrips,
+					String.format("%.1f", sequential.getTripsPerSecond()),
+					String.format("%.1f", parallel.getTripsPerSecond()));
+		}
+	}
+
+	private void clearRouteCache() {
+		if (routeCache != null) {
+			routeCache.clear();
+		}
+	}
+
+	private void logBindingScopes() {
+		log.info("Scopes of the mode choice bindings (singletons are shared by all replanning threads):");
+
+		for (Map.Entry<Key<?>, Binding<?>> entry : injector.getAllBindings().entrySet()) {
+			String typeName = entry.getKey().getTypeLiteral().getRawType().getName();
+
+			if (typeName.startsWith("abmt2025.project.")) {
+				log.info("  {}: {}", entry.getKey(), Scopes.isSingleton(entry.getValue()) ? "singleton" : "unscoped");
+			}
+		}
+	}
+}
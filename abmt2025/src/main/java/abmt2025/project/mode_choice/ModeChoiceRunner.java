@@ -0,0 +1,154 @@
+package abmt2025.project.mode_choice;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.contribs.discrete_mode_choice.model.DiscreteModeChoiceModel;
+import org.matsim.contribs.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import org.matsim.contribs.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+import org.matsim.contribs.discrete_mode_choice.replanning.TripListConverter;
+
+import com.google.inject.Provider;
+
+/**
+ * Runs the discrete mode choice model on the selected plans of a list of persons,
+ * outside of replanning and without changing the plans, with a given number of
+ * threads.
+ *
+ * Every thread gets its own model instance from the provider, as in replanning,
+ * and the plans are converted into trips as in the replanning module of DMC.
+ * The random number generator of a person only depends on the seed and the
+ * position of the person in the list, so that runs with different numbers of
+ * threads are comparable trip by trip.
+ */
+public class ModeChoiceRunner {
+	private final Provider<DiscreteModeChoiceModel> modelProvider;
+	private final long seed;
+
+	public ModeChoiceRunner(Provider<DiscreteModeChoiceModel> modelProvider, long seed) {
+		this.modelProvider = modelProvider;
+		this.seed = seed;
+	}
+
+	public Result run(List<Person> persons, int numberOfThreads, boolean recordChoices) throws InterruptedException {
+		Result result = new Result(persons.size(), recordChoices);
+
+		AtomicInteger nextPersonIndex = new AtomicInteger(0);
+		AtomicLong numberOfTrips = new AtomicLong(0);
+		AtomicLong numberOfFailures = new AtomicLong(0);
+		AtomicLong allocatedBytes = new AtomicLong(0);
+
+		List<Thread> threads = new ArrayList<>(numberOfThreads);
+
+		for (int i = 0; i < numberOfThreads; i++) {
+			DiscreteModeChoiceModel model = modelProvider.get();
+			TripListConverter converter = new TripListConverter();
+
+			threads.add(new Thread(() -> {
+				com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+						.getThreadMXBean();
+				long startBytes = threadBean.getCurrentThreadAllocatedBytes();
+
+				int personIndex;
+
+				while ((personIndex = nextPersonIndex.getAndIncrement()) < persons.size()) {
+					Person person = persons.get(personIndex);
+					List<DiscreteModeChoiceTrip> trips = converter.convert(person.getSelectedPlan());
+					numberOfTrips.addAndGet(trips.size());
+
+					try {
+						List<TripCandidate> candidates = model.chooseModes(person, trips,
+								new Random(seed + personIndex));
+
+						if (recordChoices) {
+							result.setChoices(personIndex, candidates);
+						}
+					} catch (Exception e) {
+						numberOfFailures.incrementAndGet();
+					}
+				}
+
+				allocatedBytes.addAndGet(threadBean.getCurrentThreadAllocatedBytes() - startBytes);
+			}, "ModeChoiceRunner-" + i));
+		}
+
+		long startTime = System.nanoTime();
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		result.runtime_ns = System.nanoTime() - startTime;
+		result.numberOfTrips = numberOfTrips.get();
+		result.numberOfFailures = numberOfFailures.get();
+		result.allocatedBytes = allocatedBytes.get();
+
+		return result;
+	}
+
+	static public class Result {
+		private long runtime_ns;
+		private long numberOfTrips;
+		private long numberOfFailures;
+		private long allocatedBytes;
+
+		// Per person, null if the choice failed or choices are not recorded
+		private final String[][] modes;
+		private final double[][] utilities;
+
+		private Result(int numberOfPersons, boolean recordChoices) {
+			this.modes = recordChoices ? new String[numberOfPersons][] : null;
+			this.utilities = recordChoices ? new double[numberOfPersons][] : null;
+		}
+
+		private void setChoices(int personIndex, List<TripCandidate> candidates) {
+			String[] personModes = new String[candidates.size()];
+			double[] personUtilities = new double[candidates.size()];
+
+			for (int i = 0; i < candidates.size(); i++) {
+				personModes[i] = candidates.get(i).getMode();
+				personUtilities[i] = candidates.get(i).getUtility();
+			}
+
+			modes[personIndex] = personModes;
+			utilities[personIndex] = personUtilities;
+		}
+
+		public long getRuntime_ns() {
+			return runtime_ns;
+		}
+
+		public long getNumberOfTrips() {
+			return numberOfTrips;
+		}
+
+		public long getNumberOfFailures() {
+			return numberOfFailures;
+		}
+
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		public double getTripsPerSecond() {
+			return runtime_ns > 0 ? 1e9 * numberOfTrips / runtime_ns : 0.0;
+		}
+
+		public String[] getModes(int personIndex) {
+			return modes[personIndex];
+		}
+
+		public double[] getUtilities(int personIndex) {
+			return utilities[personIndex];
+		}
+	}
+}
@@ -2,7 +2,6 @@ package abmt2025.project.mode_choice.estimators;
 
 import java.util.List;
 
-import org.eqasim.core.simulation.mode_choice.utilities.estimators.EstimatorUtils;
 import org.eqasim.switzerland.mode_choice.utilities.estimators.SwissBikeUtilityEstimator;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.PlanElement;
@@ -18,37 +17,54 @@ import abmt2025.project.mode_choice.variables.AstraBikeVariables;
 import abmt2025.project.mode_choice.variables.AstraPersonVariables;
 import abmt2025.project.mode_choice.variables.AstraTripVariables;
 
-public class AstraBikeUtilityEstimator_DRT extends SwissBikeUtilityEstimator {
+public class AstraBikeUtilityEstimator_DRT extends SwissBikeUtilityEstimator
+		implements BatchUtilityEstimator<AstraBikeUtilityEstimator_DRT.BatchColumn> {
 	static public final String NAME = "AstraBikeUtilityEstimator_DRT";
 
 	private final AstraModeParameters_DRT parameters;
 	private final AstraBikePredictor predictor;
 	private final AstraPersonPredictor personPredictor;
 	private final AstraTripPredictor tripPredictor;
+	private final TripInteractionContext interactions;
 
 	@Inject
 	public AstraBikeUtilityEstimator_DRT(AstraModeParameters_DRT parameters, AstraBikePredictor predictor,
-			AstraPersonPredictor personPredictor, AstraTripPredictor tripPredictor) {
+			AstraPersonPredictor personPredictor, AstraTripPredictor tripPredictor,
+			TripInteractionContext interactions) {
 		super(parameters, personPredictor.delegate, predictor.delegate);
 
 		this.parameters = parameters;
 		this.predictor = predictor;
 		this.personPredictor = personPredictor;
 		this.tripPredictor = tripPredictor;
+		this.interactions = interactions;
+	}
+
+	// The terms below are shared by the scalar and the batch estimation
+
+	static private double estimateTravelTimeUtility(double travelTimeUtility, double distanceInteraction) {
+		return travelTimeUtility * distanceInteraction;
+	}
+
+	static private double estimateAgeUtility(AstraModeParameters_DRT parameters, boolean ageOver60) {
+		return ageOver60 ? parameters.astraBike.betaAgeOver60 : 0.0;
+	}
+
+	static private double estimateWorkUtility(AstraModeParameters_DRT parameters, boolean isWork) {
+		return isWork ? parameters.astraBike.betaWork : 0.0;
 	}
 
 	protected double estimateTravelTimeUtility(AstraBikeVariables variables) {
-		return super.estimateTravelTimeUtility(variables) //
-				* EstimatorUtils.interaction(variables.euclideanDistance_km, parameters.referenceEuclideanDistance_km,
-						parameters.lambdaTravelTimeEuclideanDistance);
+		return estimateTravelTimeUtility(super.estimateTravelTimeUtility(variables),
+				interactions.getTravelTimeDistanceInteraction(variables.euclideanDistance_km));
 	}
 
 	protected double estimateAgeUtility(AstraPersonVariables variables) {
-		return variables.age_a >= 60 ? parameters.astraBike.betaAgeOver60 : 0.0;
+		return estimateAgeUtility(parameters, variables.age_a >= 60);
 	}
 
 	protected double estimateWorkUtility(AstraTripVariables variables) {
-		return variables.isWork ? parameters.astraBike.betaWork : 0.0;
+		return estimateWorkUtility(parameters, variables.isWork);
 	}
 
 	@Override
@@ -66,4 +82,53 @@ public class AstraBikeUtilityEstimator_DRT extends SwissBikeUtilityEstimator {
 
 		return utility;
 	}
+
+	public enum BatchColumn {
+		TRAVEL_TIME_UTILITY, DISTANCE_INTERACTION, AGE_OVER_60, WORK
+	}
+
+	@Override
+	public UtilityBlock<BatchColumn> createBlock(int capacity) {
+		return new UtilityBlock<>(BatchColumn.class, capacity);
+	}
+
+	@Override
+	public int addTrip(UtilityBlock<BatchColumn> block, Person person, DiscreteModeChoiceTrip trip,
+			List<? extends PlanElement> elements) {
+		AstraBikeVariables variables = predictor.predictVariables(person, trip, elements);
+		AstraPersonVariables personVariables = personPredictor.predictVariables(person, trip, elements);
+		AstraTripVariables tripVariables = tripPredictor.predictVariables(person, trip, elements);
+
+		// Terms defined by eqasim and the interaction factors are evaluated here, the Astra
+		// terms in the batch loop
+		int row = block.addRow();
+		block.set(row, BatchColumn.TRAVEL_TIME_UTILITY, super.estimateTravelTimeUtility(variables));
+		block.set(row, BatchColumn.DISTANCE_INTERACTION,
+				interactions.getTravelTimeDistanceInteraction(variables.euclideanDistance_km));
+		block.set(row, BatchColumn.AGE_OVER_60, personVariables.age_a >= 60);
+		block.set(row, BatchColumn.WORK, tripVariables.isWork);
+
+		return row;
+	}
+
+	@Override
+	public void estimateUtilities(UtilityBlock<BatchColumn> block, double[] utilities) {
+		double[] travelTimeUtility = block.getColumn(BatchColumn.TRAVEL_TIME_UTILITY);
+		double[] distanceInteraction = block.getColumn(BatchColumn.DISTANCE_INTERACTION);
+		double[] ageOver60 = block.getColumn(BatchColumn.AGE_OVER_60);
+		double[] work = block.getColumn(BatchColumn.WORK);
+
+		double constantUtility = estimateConstantUtility();
+
+		for (int i = 0; i < block.size(); i++) {
+			double utility = 0.0;
+
+			utility += constantUtility;
+			utility += estimateTravelTimeUtility(travelTimeUtility[i], distanceInteraction[i]);
+			utility += estimateAgeUtility(parameters, ageOver60[i] != 0.0);
+			utility += estimateWorkUtility(parameters, work[i] != 0.0);
+
+			utilities[i] = utility;
+		}
+	}
 }
@@ -3,7 +3,6 @@ package abmt2025.project.mode_choice.estimators;
 import java.util.List;
 
 import org.eqasim.core.simulation.mode_choice.utilities.estimators.CarUtilityEstimator;
-import org.eqasim.core.simulation.mode_choice.utilities.estimators.EstimatorUtils;
 import org.eqasim.core.simulation.mode_choice.utilities.predictors.CarPredictor;
 import org.eqasim.core.simulation.mode_choice.utilities.variables.CarVariables;
 import org.matsim.api.core.v01.population.Leg;
@@ -19,47 +18,71 @@ import abmt2025.project.mode_choice.predictors.AstraTripPredictor;
 import abmt2025.project.mode_choice.variables.AstraPersonVariables;
 import abmt2025.project.mode_choice.variables.AstraTripVariables;
 
-public class AstraCarUtilityEstimator_DRT extends CarUtilityEstimator {
+public class AstraCarUtilityEstimator_DRT extends CarUtilityEstimator
+		implements BatchUtilityEstimator<AstraCarUtilityEstimator_DRT.BatchColumn> {
 	static public final String NAME = "AstraCarUtilityEstimator_DRT";
 
 	private final AstraModeParameters_DRT parameters;
 	private final AstraPersonPredictor personPredictor;
 	private final AstraTripPredictor tripPredictor;
+	private final TripInteractionContext interactions;
 	private final CarPredictor predictor;
 
 	@Inject
 	public AstraCarUtilityEstimator_DRT(AstraModeParameters_DRT parameters, CarPredictor predictor,
-			AstraPersonPredictor personPredictor, AstraTripPredictor tripPredictor) {
+			AstraPersonPredictor personPredictor, AstraTripPredictor tripPredictor,
+			TripInteractionContext interactions) {
 		super(parameters, predictor);
 
 		this.parameters = parameters;
 		this.personPredictor = personPredictor;
 		this.tripPredictor = tripPredictor;
+		this.interactions = interactions;
 		this.predictor = predictor;
 	}
 
+	// The terms below are shared by the scalar and the batch estimation
+
+	static private double estimateTravelTimeUtility(double travelTimeUtility, double distanceInteraction) {
+		return travelTimeUtility * distanceInteraction;
+	}
+
+	static private double estimateMonetaryCostUtility(double monetaryCostUtility, double incomeInteraction) {
+		return monetaryCostUtility * incomeInteraction;
+	}
+
+	static private double estimateAgeUtility(AstraModeParameters_DRT parameters, boolean ageOver60) {
+		return ageOver60 ? parameters.astraCar.betaAgeOver60 : 0.0;
+	}
+
+	static private double estimateWorkUtility(AstraModeParameters_DRT parameters, boolean isWork) {
+		return isWork ? parameters.astraCar.betaWork : 0.0;
+	}
+
+	static private double estimateCityUtility(AstraModeParameters_DRT parameters, boolean isCity) {
+		return isCity ? parameters.astraCar.betaCity : 0.0;
+	}
+
 	protected double estimateTravelTimeUtility(CarVariables variables) {
-		return super.estimateTravelTimeUtility(variables) //
-				* EstimatorUtils.interaction(variables.euclideanDistance_km, parameters.referenceEuclideanDistance_km,
-						parameters.lambdaTravelTimeEuclideanDistance);
+		return estimateTravelTimeUtility(super.estimateTravelTimeUtility(variables),
+				interactions.getTravelTimeDistanceInteraction(variables.euclideanDistance_km));
 	}
 
 	protected double estimateMonetaryCostUtility(CarVariables variables, AstraPersonVariables personVariables) {
-		return super.estimateMonetaryCostUtility(variables) //
-				* EstimatorUtils.interaction(personVariables.householdIncome_MU, parameters.referenceHouseholdIncome_MU,
-						parameters.lambdaCostHouseholdIncome);
+		return estimateMonetaryCostUtility(super.estimateMonetaryCostUtility(variables),
+				interactions.getCostIncomeInteraction(personVariables.householdIncome_MU));
 	}
 
 	protected double estimateAgeUtility(AstraPersonVariables variables) {
-		return variables.age_a >= 60 ? parameters.astraCar.betaAgeOver60 : 0.0;
+		return estimateAgeUtility(parameters, variables.age_a >= 60);
 	}
 
 	protected double estimateWorkUtility(AstraTripVariables variables) {
-		return variables.isWork ? parameters.astraCar.betaWork : 0.0;
+		return estimateWorkUtility(parameters, variables.isWork);
 	}
 
 	protected double estimateCityUtility(AstraTripVariables variables) {
-		return variables.isCity ? parameters.astraCar.betaCity : 0.0;
+		return estimateCityUtility(parameters, variables.isCity);
 	}
 
 	@Override
@@ -83,4 +106,69 @@ public class AstraCarUtilityEstimator_DRT extends CarUtilityEstimator {
 
 		return utility;
 	}
+
+	public enum BatchColumn {
+		TRAVEL_TIME_UTILITY, DISTANCE_INTERACTION, ACCESS_EGRESS_UTILITY, MONETARY_COST_UTILITY,
+		INCOME_INTERACTION, AGE_OVER_60, WORK, CITY
+	}
+
+	@Override
+	public UtilityBlock<BatchColumn> createBlock(int capacity) {
+		return new UtilityBlock<>(BatchColumn.class, capacity);
+	}
+
+	@Override
+	public int addTrip(UtilityBlock<BatchColumn> block, Person person, DiscreteModeChoiceTrip trip,
+			List<? extends PlanElement> elements) {
+		CarVariables variables = predictor.predictVariables(person, trip, elements);
+		AstraPersonVariables personVariables = personPredictor.predictVariables(person, trip, elements);
+		AstraTripVariables tripVariables = tripPredictor.predictVariables(person, trip, elements);
+
+		// Terms defined by eqasim and the interaction factors are evaluated here, the Astra
+		// terms in the batch loop
+		int row = block.addRow();
+		block.set(row, BatchColumn.TRAVEL_TIME_UTILITY, super.estimateTravelTimeUtility(variables));
+		block.set(row, BatchColumn.DISTANCE_INTERACTION,
+				interactions.getTravelTimeDistanceInteraction(variables.euclideanDistance_km));
+		block.set(row, BatchColumn.ACCESS_EGRESS_UTILITY, estimateAccessEgressTimeUtility(variables));
+		block.set(row, BatchColumn.MONETARY_COST_UTILITY, super.estimateMonetaryCostUtility(variables));
+		block.set(row, BatchColumn.INCOME_INTERACTION,
+				interactions.getCostIncomeInteraction(personVariables.householdIncome_MU));
+		block.set(row, BatchColumn.AGE_OVER_60, personVariables.age_a >= 60);
+		block.set(row, BatchColumn.WORK, tripVariables.isWork);
+		block.set(row, BatchColumn.CITY, tripVariables.isCity);
+
+		Leg leg = (Leg) elements.get(0);
+		leg.getAttributes().putAttribute("isNew", true);
+
+		return row;
+	}
+
+	@Override
+	public void estimateUtilities(UtilityBlock<BatchColumn> block, double[] utilities) {
+		double[] travelTimeUtility = block.getColumn(BatchColumn.TRAVEL_TIME_UTILITY);
+		double[] distanceInteraction = block.getColumn(BatchColumn.DISTANCE_INTERACTION);
+		double[] accessEgressUtility = block.getColumn(BatchColumn.ACCESS_EGRESS_UTILITY);
+		double[] monetaryCostUtility = block.getColumn(BatchColumn.MONETARY_COST_UTILITY);
+		double[] incomeInteraction = block.getColumn(BatchColumn.INCOME_INTERACTION);
+		double[] ageOver60 = block.getColumn(BatchColumn.AGE_OVER_60);
+		double[] work = block.getColumn(BatchColumn.WORK);
+		double[] city = block.getColumn(BatchColumn.CITY);
+
+		double constantUtility = estimateConstantUtility();
+
+		for (int i = 0; i < block.size(); i++) {
+			double utility = 0.0;
+
+			utility += constantUtility;
+			utility += estimateTravelTimeUtility(travelTimeUtility[i], distanceInteraction[i]);
+			utility += accessEgressUtility[i];
+			utility += estimateMonetaryCostUtility(monetaryCostUtility[i], incomeInteraction[i]);
+			utility += estimateAgeUtility(parameters, ageOver60[i] != 0.0);
+			utility += estimateWorkUtility(parameters, work[i] != 0.0);
+			utility += estimateCityUtility(parameters, city[i] != 0.0);
+
+			utilities[i] = utility;
+		}
+	}
 }
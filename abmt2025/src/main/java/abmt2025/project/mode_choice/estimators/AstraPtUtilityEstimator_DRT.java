@@ -2,7 +2,6 @@ package abmt2025.project.mode_choice.estimators;
 
 import java.util.List;
 
-import org.eqasim.core.simulation.mode_choice.utilities.estimators.EstimatorUtils;
 import org.eqasim.core.simulation.mode_choice.utilities.estimators.PtUtilityEstimator;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.PlanElement;
@@ -18,68 +17,107 @@ import abmt2025.project.mode_choice.variables.AstraPersonVariables;
 import abmt2025.project.mode_choice.variables.AstraPtVariables;
 import abmt2025.project.mode_choice.variables.AstraTripVariables;
 
-public class AstraPtUtilityEstimator_DRT extends PtUtilityEstimator {
+public class AstraPtUtilityEstimator_DRT extends PtUtilityEstimator
+		implements BatchUtilityEstimator<AstraPtUtilityEstimator_DRT.BatchColumn> {
 	static public final String NAME = "AstraPtUtilityEstimator_DRT";
 
 	private final AstraModeParameters_DRT parameters;
 	private final AstraPtPredictor predictor;
 	private final AstraPersonPredictor personPredictor;
 	private final AstraTripPredictor tripPredictor;
+	private final TripInteractionContext interactions;
 
 	@Inject
 	public AstraPtUtilityEstimator_DRT(AstraModeParameters_DRT parameters, AstraPtPredictor predictor,
-			AstraPersonPredictor personPredictor, AstraTripPredictor tripPredictor) {
+			AstraPersonPredictor personPredictor, AstraTripPredictor tripPredictor,
+			TripInteractionContext interactions) {
 		super(parameters, predictor.delegate);
 
 		this.parameters = parameters;
 		this.predictor = predictor;
 		this.personPredictor = personPredictor;
 		this.tripPredictor = tripPredictor;
+		this.interactions = interactions;
 	}
 
-	protected double estimateInVehicleTimeUtility(AstraPtVariables variables) {
+	// The terms below are shared by the scalar and the batch estimation
+
+	static private double estimateInVehicleTimeUtility(AstraModeParameters_DRT parameters,
+			double distanceInteraction, double railTravelTime_min, double busTravelTime_min) {
 		double utility = 0.0;
 
 		utility += parameters.astraPt.betaRailTravelTime_u_min //
-				* EstimatorUtils.interaction(variables.euclideanDistance_km, parameters.referenceEuclideanDistance_km,
-						parameters.lambdaTravelTimeEuclideanDistance) //
-				* variables.railTravelTime_min;
+				* distanceInteraction //
+				* railTravelTime_min;
 
-		if (variables.railTravelTime_min > 0.0 && variables.busTravelTime_min > 0.0) {
+		if (railTravelTime_min > 0.0 && busTravelTime_min > 0.0) {
 			// This is a feeder case
 			utility += parameters.astraPt.betaFeederTravelTime_u_min //
-					* variables.busTravelTime_min;
+					* busTravelTime_min;
 		} else {
 			// This is not a feeder case
 			utility += parameters.astraPt.betaBusTravelTime_u_min //
-					* EstimatorUtils.interaction(variables.euclideanDistance_km,
-							parameters.referenceEuclideanDistance_km, parameters.lambdaTravelTimeEuclideanDistance) //
-					* variables.busTravelTime_min;
+					* distanceInteraction //
+					* busTravelTime_min;
+		}
+
+		return utility;
+	}
+
+	static private double estimateAgeUtility(AstraModeParameters_DRT parameters, boolean ageOver60) {
+		return ageOver60 ? parameters.astraWalk.betaAgeOver60 : 0.0;
+	}
+
+	static private double estimateWorkUtility(AstraModeParameters_DRT parameters, boolean isWork) {
+		return isWork ? parameters.astraWalk.betaWork : 0.0;
+	}
+
+	static private double estimateHeadwayUtility(AstraModeParameters_DRT parameters, double headway_min) {
+		if (parameters.astraPt.betaHeadway_u_min != 0.0 && headway_min == 0.0) {
+			throw new IllegalStateException("Non-zero beta for headway, but no headway is given.");
+		}
+
+		return parameters.astraPt.betaHeadway_u_min * headway_min;
+	}
+
+	static private double estimateDrtAccessEgressUtility(AstraModeParameters_DRT parameters, boolean hasDrtAccess,
+			double drtAccessEgressTime_min, double drtWaitingTime_min) {
+		if (!hasDrtAccess) {
+			return 0.0;
 		}
 
+		double utility = 0.0;
+
+		// DRT in-vehicle time utility (using DRT parameters)
+		utility += parameters.astraDRT.betaInVehicleTime * drtAccessEgressTime_min;
+
+		// DRT waiting time utility (using DRT parameters)
+		utility += parameters.astraDRT.betaWaitingTime * drtWaitingTime_min;
+
 		return utility;
 	}
 
+	protected double estimateInVehicleTimeUtility(AstraPtVariables variables) {
+		return estimateInVehicleTimeUtility(parameters,
+				interactions.getTravelTimeDistanceInteraction(variables.euclideanDistance_km),
+				variables.railTravelTime_min, variables.busTravelTime_min);
+	}
+
 	protected double estimateMonetaryCostUtility(AstraPtVariables variables, AstraPersonVariables personVariables) {
 		return super.estimateMonetaryCostUtility(variables) //
-				* EstimatorUtils.interaction(personVariables.householdIncome_MU, parameters.referenceHouseholdIncome_MU,
-						parameters.lambdaCostHouseholdIncome);
+				* interactions.getCostIncomeInteraction(personVariables.householdIncome_MU);
 	}
 
 	protected double estimateAgeUtility(AstraPersonVariables variables) {
-		return variables.age_a >= 60 ? parameters.astraWalk.betaAgeOver60 : 0.0;
+		return estimateAgeUtility(parameters, variables.age_a >= 60);
 	}
 
 	protected double estimateWorkUtility(AstraTripVariables variables) {
-		return variables.isWork ? parameters.astraWalk.betaWork : 0.0;
+		return estimateWorkUtility(parameters, variables.isWork);
 	}
 
 	protected double estimateHeadwayUtility(AstraPtVariables variables) {
-		if (parameters.astraPt.betaHeadway_u_min != 0.0 && variables.headway_min == 0.0) {
-			throw new IllegalStateException("Non-zero beta for headway, but no headway is given.");
-		}
-
-		return parameters.astraPt.betaHeadway_u_min * variables.headway_min;
+		return estimateHeadwayUtility(parameters, variables.headway_min);
 	}
 
 	protected double estimateOvgkUtility(AstraPtVariables variables) {
@@ -104,19 +142,8 @@ public class AstraPtUtilityEstimator_DRT extends PtUtilityEstimator {
 	 * Uses DRT-specific parameters for travel time and waiting time.
 	 */
 	protected double estimateDrtAccessEgressUtility(AstraPtVariables variables) {
-		if (!variables.hasDrtAccess) {
-			return 0.0;
-		}
-
-		double utility = 0.0;
-
-		// DRT in-vehicle time utility (using DRT parameters)
-		utility += parameters.astraDRT.betaInVehicleTime * variables.drtAccessEgressTime_min;
-
-		// DRT waiting time utility (using DRT parameters)
-		utility += parameters.astraDRT.betaWaitingTime * variables.drtWaitingTime_min;
-
-		return utility;
+		return estimateDrtAccessEgressUtility(parameters, variables.hasDrtAccess, variables.drtAccessEgressTime_min,
+				variables.drtWaitingTime_min);
 	}
 
 	@Override
@@ -143,4 +170,84 @@ public class AstraPtUtilityEstimator_DRT extends PtUtilityEstimator {
 
 		return utility;
 	}
+
+	public enum BatchColumn {
+		ACCESS_EGRESS_UTILITY, RAIL_TRAVEL_TIME_MIN, BUS_TRAVEL_TIME_MIN, DISTANCE_INTERACTION, WAITING_TIME_UTILITY,
+		LINE_SWITCH_UTILITY, MONETARY_COST_UTILITY, AGE_OVER_60, WORK, HEADWAY_MIN, OVGK_UTILITY, DRT_ACCESS,
+		DRT_ACCESS_EGRESS_TIME_MIN, DRT_WAITING_TIME_MIN
+	}
+
+	@Override
+	public UtilityBlock<BatchColumn> createBlock(int capacity) {
+		return new UtilityBlock<>(BatchColumn.class, capacity);
+	}
+
+	@Override
+	public int addTrip(UtilityBlock<BatchColumn> block, Person person, DiscreteModeChoiceTrip trip,
+			List<? extends PlanElement> elements) {
+		AstraPtVariables variables = predictor.predictVariables(person, trip, elements);
+		AstraPersonVariables personVariables = personPredictor.predictVariables(person, trip, elements);
+		AstraTripVariables tripVariables = tripPredictor.predictVariables(person, trip, elements);
+
+		// Terms defined by eqasim and the interaction factors are evaluated here, the Astra
+		// terms in the batch loop
+		int row = block.addRow();
+		block.set(row, BatchColumn.ACCESS_EGRESS_UTILITY, estimateAccessEgressTimeUtility(variables));
+		block.set(row, BatchColumn.RAIL_TRAVEL_TIME_MIN, variables.railTravelTime_min);
+		block.set(row, BatchColumn.BUS_TRAVEL_TIME_MIN, variables.busTravelTime_min);
+		block.set(row, BatchColumn.DISTANCE_INTERACTION,
+				interactions.getTravelTimeDistanceInteraction(variables.euclideanDistance_km));
+		block.set(row, BatchColumn.WAITING_TIME_UTILITY, estimateWaitingTimeUtility(variables));
+		block.set(row, BatchColumn.LINE_SWITCH_UTILITY, estimateLineSwitchUtility(variables));
+		block.set(row, BatchColumn.MONETARY_COST_UTILITY, estimateMonetaryCostUtility(variables));
+		block.set(row, BatchColumn.AGE_OVER_60, personVariables.age_a >= 60);
+		block.set(row, BatchColumn.WORK, tripVariables.isWork);
+		block.set(row, BatchColumn.HEADWAY_MIN, variables.headway_min);
+		block.set(row, BatchColumn.OVGK_UTILITY, estimateOvgkUtility(variables));
+		block.set(row, BatchColumn.DRT_ACCESS, variables.hasDrtAccess);
+		block.set(row, BatchColumn.DRT_ACCESS_EGRESS_TIME_MIN, variables.drtAccessEgressTime_min);
+		block.set(row, BatchColumn.DRT_WAITING_TIME_MIN, variables.drtWaitingTime_min);
+
+		return row;
+	}
+
+	@Override
+	public void estimateUtilities(UtilityBlock<BatchColumn> block, double[] utilities) {
+		double[] accessEgressUtility = block.getColumn(BatchColumn.ACCESS_EGRESS_UTILITY);
+		double[] railTravelTime_min = block.getColumn(BatchColumn.RAIL_TRAVEL_TIME_MIN);
+		double[] busTravelTime_min = block.getColumn(BatchColumn.BUS_TRAVEL_TIME_MIN);
+		double[] distanceInteraction = block.getColumn(BatchColumn.DISTANCE_INTERACTION);
+		double[] waitingTimeUtility = block.getColumn(BatchColumn.WAITING_TIME_UTILITY);
+		double[] lineSwitchUtility = block.getColumn(BatchColumn.LINE_SWITCH_UTILITY);
+		double[] monetaryCostUtility = block.getColumn(BatchColumn.MONETARY_COST_UTILITY);
+		double[] ageOver60 = block.getColumn(BatchColumn.AGE_OVER_60);
+		double[] work = block.getColumn(BatchColumn.WORK);
+		double[] headway_min = block.getColumn(BatchColumn.HEADWAY_MIN);
+		double[] ovgkUtility = block.getColumn(BatchColumn.OVGK_UTILITY);
+		double[] drtAccess = block.getColumn(BatchColumn.DRT_ACCESS);
+		double[] drtAccessEgressTime_min = block.getColumn(BatchColumn.DRT_ACCESS_EGRESS_TIME_MIN);
+		double[] drtWaitingTime_min = block.getColumn(BatchColumn.DRT_WAITING_TIME_MIN);
+
+		double constantUtility = estimateConstantUtility();
+
+		for (int i = 0; i < block.size(); i++) {
+			double utility = 0.0;
+
+			utility += constantUtility;
+			utility += accessEgressUtility[i];
+			utility += estimateInVehicleTimeUtility(parameters, distanceInteraction[i], railTravelTime_min[i],
+					busTravelTime_min[i]);
+			utility += waitingTimeUtility[i];
+			utility += lineSwitchUtility[i];
+			utility += monetaryCostUtility[i];
+			utility += estimateAgeUtility(parameters, ageOver60[i] != 0.0);
+			utility += estimateWorkUtility(parameters, work[i] != 0.0);
+			utility += estimateHeadwayUtility(parameters, headway_min[i]);
+			utility += ovgkUtility[i];
+			utility += estimateDrtAccessEgressUtility(parameters, drtAccess[i] != 0.0, drtAccessEgressTime_min[i],
+					drtWaitingTime_min[i]);
+
+			utilities[i] = utility;
+		}
+	}
 }
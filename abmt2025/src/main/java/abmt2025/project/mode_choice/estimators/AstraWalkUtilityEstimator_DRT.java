@@ -2,7 +2,6 @@ package abmt2025.project.mode_choice.estimators;
 
 import java.util.List;
 
-import org.eqasim.core.simulation.mode_choice.utilities.estimators.EstimatorUtils;
 import org.eqasim.core.simulation.mode_choice.utilities.estimators.WalkUtilityEstimator;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.PlanElement;
@@ -18,42 +17,66 @@ import abmt2025.project.mode_choice.variables.AstraPersonVariables;
 import abmt2025.project.mode_choice.variables.AstraTripVariables;
 import abmt2025.project.mode_choice.variables.AstraWalkVariables;
 
-public class AstraWalkUtilityEstimator_DRT extends WalkUtilityEstimator {
+public class AstraWalkUtilityEstimator_DRT extends WalkUtilityEstimator
+		implements BatchUtilityEstimator<AstraWalkUtilityEstimator_DRT.BatchColumn> {
 	static public final String NAME = "AstraWalkUtilityEstimator_DRT";
 
 	private final AstraModeParameters_DRT parameters;
 	private final AstraWalkPredictor predictor;
 	private final AstraPersonPredictor personPredictor;
 	private final AstraTripPredictor tripPredictor;
+	private final TripInteractionContext interactions;
 
 	@Inject
 	public AstraWalkUtilityEstimator_DRT(AstraModeParameters_DRT parameters, AstraWalkPredictor predictor,
-			AstraPersonPredictor personPredictor, AstraTripPredictor tripPredictor) {
+			AstraPersonPredictor personPredictor, AstraTripPredictor tripPredictor,
+			TripInteractionContext interactions) {
 		super(parameters, predictor.delegate);
 
 		this.parameters = parameters;
 		this.predictor = predictor;
 		this.personPredictor = personPredictor;
 		this.tripPredictor = tripPredictor;
+		this.interactions = interactions;
+	}
+
+	// The terms below are shared by the scalar and the batch estimation
+
+	static private double estimateTravelTimeUtility(double travelTimeUtility, double distanceInteraction) {
+		return travelTimeUtility * distanceInteraction;
+	}
+
+	static private double estimateAgeUtility(AstraModeParameters_DRT parameters, boolean ageOver60) {
+		return ageOver60 ? parameters.astraWalk.betaAgeOver60 : 0.0;
+	}
+
+	static private double estimateWorkUtility(AstraModeParameters_DRT parameters, boolean isWork) {
+		return isWork ? parameters.astraWalk.betaWork : 0.0;
 	}
 
 	protected double estimateTravelTimeUtility(AstraWalkVariables variables) {
-		return super.estimateTravelTimeUtility(variables) //
-				* EstimatorUtils.interaction(variables.euclideanDistance_km, parameters.referenceEuclideanDistance_km,
-						parameters.lambdaTravelTimeEuclideanDistance);
+		return estimateTravelTimeUtility(super.estimateTravelTimeUtility(variables),
+				interactions.getTravelTimeDistanceInteraction(variables.euclideanDistance_km));
 	}
 
 	protected double estimateAgeUtility(AstraPersonVariables variables) {
-		return variables.age_a >= 60 ? parameters.astraWalk.betaAgeOver60 : 0.0;
+		return estimateAgeUtility(parameters, variables.age_a >= 60);
 	}
 
 	protected double estimateWorkUtility(AstraTripVariables variables) {
-		return variables.isWork ? parameters.astraWalk.betaWork : 0.0;
+		return estimateWorkUtility(parameters, variables.isWork);
+	}
+
+	static private double estimatePenaltyBeta(AstraModeParameters_DRT parameters) {
+		return Math.log(100) / parameters.astraWalk.travelTimeThreshold_min;
+	}
+
+	static private double estimatePenalty(double penaltyBeta, double travelTime_min) {
+		return -Math.exp(penaltyBeta * travelTime_min) + 1.0;
 	}
 
 	protected double estimatePenalty(AstraWalkVariables variables) {
-		double beta = Math.log(100) / parameters.astraWalk.travelTimeThreshold_min;
-		return -Math.exp(beta * variables.travelTime_min) + 1.0;
+		return estimatePenalty(estimatePenaltyBeta(parameters), variables.travelTime_min);
 	}
 
 	@Override
@@ -72,4 +95,57 @@ public class AstraWalkUtilityEstimator_DRT extends WalkUtilityEstimator {
 
 		return utility;
 	}
+
+	public enum BatchColumn {
+		TRAVEL_TIME_UTILITY, TRAVEL_TIME_MIN, DISTANCE_INTERACTION, AGE_OVER_60, WORK
+	}
+
+	@Override
+	public UtilityBlock<BatchColumn> createBlock(int capacity) {
+		return new UtilityBlock<>(BatchColumn.class, capacity);
+	}
+
+	@Override
+	public int addTrip(UtilityBlock<BatchColumn> block, Person person, DiscreteModeChoiceTrip trip,
+			List<? extends PlanElement> elements) {
+		AstraWalkVariables variables = predictor.predictVariables(person, trip, elements);
+		AstraPersonVariables personVariables = personPredictor.predictVariables(person, trip, elements);
+		AstraTripVariables tripVariables = tripPredictor.predictVariables(person, trip, elements);
+
+		// Terms defined by eqasim and the interaction factors are evaluated here, the Astra
+		// terms in the batch loop
+		int row = block.addRow();
+		block.set(row, BatchColumn.TRAVEL_TIME_UTILITY, super.estimateTravelTimeUtility(variables));
+		block.set(row, BatchColumn.TRAVEL_TIME_MIN, variables.travelTime_min);
+		block.set(row, BatchColumn.DISTANCE_INTERACTION,
+				interactions.getTravelTimeDistanceInteraction(variables.euclideanDistance_km));
+		block.set(row, BatchColumn.AGE_OVER_60, personVariables.age_a >= 60);
+		block.set(row, BatchColumn.WORK, tripVariables.isWork);
+
+		return row;
+	}
+
+	@Override
+	public void estimateUtilities(UtilityBlock<BatchColumn> block, double[] utilities) {
+		double[] travelTimeUtility = block.getColumn(BatchColumn.TRAVEL_TIME_UTILITY);
+		double[] travelTime_min = block.getColumn(BatchColumn.TRAVEL_TIME_MIN);
+		double[] distanceInteraction = block.getColumn(BatchColumn.DISTANCE_INTERACTION);
+		double[] ageOver60 = block.getColumn(BatchColumn.AGE_OVER_60);
+		double[] work = block.getColumn(BatchColumn.WORK);
+
+		double constantUtility = estimateConstantUtility();
+		double penaltyBeta = estimatePenaltyBeta(parameters);
+
+		for (int i = 0; i < block.size(); i++) {
+			double utility = 0.0;
+
+			utility += constantUtility;
+			utility += estimateTravelTimeUtility(travelTimeUtility[i], distanceInteraction[i]);
+			utility += estimateAgeUtility(parameters, ageOver60[i] != 0.0);
+			utility += estimateWorkUtility(parameters, work[i] != 0.0);
+			utility += estimatePenalty(penaltyBeta, travelTime_min[i]);
+
+			utilities[i] = utility;
+		}
+	}
 }
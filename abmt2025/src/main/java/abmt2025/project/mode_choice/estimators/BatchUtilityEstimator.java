@@ -0,0 +1,35 @@
+package abmt2025.project.mode_choice.estimators;
+
+import java.util.List;
+
+import org.eqasim.core.simulation.mode_choice.utilities.UtilityEstimator;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.contribs.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+
+/**
+ * Utility estimator that can evaluate many trips at once, for instance all
+ * trips of a person or a chunk of the population.
+ *
+ * Trips are first added to a {@link UtilityBlock}, which runs the predictors and
+ * stores the variables in columns. {@link #estimateUtilities} then computes the
+ * utilities in one loop per block. The result for every row is identical to
+ * {@link UtilityEstimator#estimateUtility} for the same trip: the terms are the
+ * same and are summed up in the same order.
+ */
+public interface BatchUtilityEstimator<C extends Enum<C>> extends UtilityEstimator {
+	UtilityBlock<C> createBlock(int capacity);
+
+	/**
+	 * Predicts the variables of the trip and appends them to the block. Returns
+	 * the row of the trip.
+	 */
+	int addTrip(UtilityBlock<C> block, Person person, DiscreteModeChoiceTrip trip,
+			List<? extends PlanElement> elements);
+
+	/**
+	 * Writes the utility of every row of the block into the first
+	 * {@link UtilityBlock#size()} entries of the given array.
+	 */
+	void estimateUtilities(UtilityBlock<C> block, double[] utilities);
+}
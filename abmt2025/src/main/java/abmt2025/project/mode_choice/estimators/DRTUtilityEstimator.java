@@ -2,7 +2,6 @@ package abmt2025.project.mode_choice.estimators;
 
 import java.util.List;
 
-import org.eqasim.core.simulation.mode_choice.utilities.UtilityEstimator;
 import org.eqasim.core.simulation.mode_choice.utilities.estimators.EstimatorUtils;
 import org.eqasim.core.simulation.mode_choice.utilities.predictors.CarPredictor;
 import org.eqasim.core.simulation.mode_choice.utilities.variables.CarVariables;
@@ -25,7 +24,7 @@ import abmt2025.project.mode_choice.variables.DRTVariables;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-public class DRTUtilityEstimator implements UtilityEstimator {
+public class DRTUtilityEstimator implements BatchUtilityEstimator<DRTUtilityEstimator.BatchColumn> {
 	
 	static public final String NAME = "DRTUtilityEstimator";
 	private static final Logger log = LogManager.getLogger(DRTUtilityEstimator.class);
@@ -51,8 +50,26 @@ public class DRTUtilityEstimator implements UtilityEstimator {
 		return parameters.astraDRT.betaASC;
 	}
 	
+	// The terms below are shared by the scalar and the batch estimation
+
+	static private double estimateTravelTimeUtility(AstraModeParameters_DRT parameters, double inVehicleTime_min) {
+		return parameters.astraDRT.betaInVehicleTime * inVehicleTime_min;
+	}
+
+	static private double estimateWaitingTimeUtility(AstraModeParameters_DRT parameters, double waitingTime_min) {
+		return parameters.astraDRT.betaWaitingTime * waitingTime_min;
+	}
+
+	static private double estimateWorkUtility(AstraModeParameters_DRT parameters, boolean isWork) {
+		return isWork ? parameters.astraDRT.betaWork : 0.0;
+	}
+
+	static private double estimateCostUtility(AstraModeParameters_DRT parameters, double cost) {
+		return parameters.betaCost_u_MU * cost;
+	}
+
 	protected double estimateTravelTimeUtility(DRTVariables variables) {
-		return parameters.astraDRT.betaInVehicleTime * variables.invehicletime_min;
+		return estimateTravelTimeUtility(parameters, variables.invehicletime_min);
 	}
 	
 	protected double estimateAccessEgressTimeUtility(DRTVariables variables) {
@@ -60,11 +77,11 @@ public class DRTUtilityEstimator implements UtilityEstimator {
 	}
 	
 	protected double estimateWaitingTimeUtility(DRTVariables variables) {
-		return parameters.astraDRT.betaWaitingTime * variables.waitingtime_min;
+		return estimateWaitingTimeUtility(parameters, variables.waitingtime_min);
 	}
 	
 	protected double estimateWorkUtility(AstraTripVariables variables) {
-	    return variables.isWork ? parameters.astraDRT.betaWork : 0.0;
+		return estimateWorkUtility(parameters, variables.isWork);
 	}
 	
 	protected double estimateAgeUtility(AstraPersonVariables variables) {
@@ -72,7 +89,7 @@ public class DRTUtilityEstimator implements UtilityEstimator {
 	}
 	
 	protected double estimateCostUtility(DRTVariables variables) {
-		return parameters.betaCost_u_MU * variables.cost;
+		return estimateCostUtility(parameters, variables.cost);
 	}
 	
 	// Cost?
@@ -123,4 +140,72 @@ public class DRTUtilityEstimator implements UtilityEstimator {
             return Double.NEGATIVE_INFINITY;
         }
     }
-}  
\ No newline at end of file
+
+	public enum BatchColumn {
+		VALID, IN_VEHICLE_TIME_MIN, WAITING_TIME_MIN, WORK, COST
+	}
+
+	@Override
+	public UtilityBlock<BatchColumn> createBlock(int capacity) {
+		return new UtilityBlock<>(BatchColumn.class, capacity);
+	}
+
+	@Override
+	public int addTrip(UtilityBlock<BatchColumn> block, Person person, DiscreteModeChoiceTrip trip,
+			List<? extends PlanElement> elements) {
+		int row = block.addRow();
+		block.set(row, BatchColumn.VALID, false);
+
+		// Same rules as the scalar path: unpredictable trips get a utility of -infinity
+		try {
+			DRTVariables variables = drtpredictor.predictVariables(person, trip, elements);
+
+			if (variables == null || Double.isNaN(variables.invehicletime_min)
+					|| Double.isInfinite(variables.invehicletime_min) || Double.isNaN(variables.waitingtime_min)
+					|| Double.isInfinite(variables.waitingtime_min) || Double.isNaN(variables.cost)
+					|| Double.isInfinite(variables.cost)) {
+				return row;
+			}
+
+			AstraTripVariables tripVariables = tripPredictor.predictVariables(person, trip, elements);
+
+			block.set(row, BatchColumn.IN_VEHICLE_TIME_MIN, variables.invehicletime_min);
+			block.set(row, BatchColumn.WAITING_TIME_MIN, variables.waitingtime_min);
+			block.set(row, BatchColumn.WORK, tripVariables.isWork);
+			block.set(row, BatchColumn.COST, variables.cost);
+			block.set(row, BatchColumn.VALID, true);
+		} catch (Exception e) {
+			log.warn("Exception in DRT utility calculation for person {}: {}", person.getId(), e.getMessage());
+		}
+
+		return row;
+	}
+
+	@Override
+	public void estimateUtilities(UtilityBlock<BatchColumn> block, double[] utilities) {
+		double[] valid = block.getColumn(BatchColumn.VALID);
+		double[] inVehicleTime_min = block.getColumn(BatchColumn.IN_VEHICLE_TIME_MIN);
+		double[] waitingTime_min = block.getColumn(BatchColumn.WAITING_TIME_MIN);
+		double[] work = block.getColumn(BatchColumn.WORK);
+		double[] cost = block.getColumn(BatchColumn.COST);
+
+		double constantUtility = estimateConstantUtility();
+
+		for (int i = 0; i < block.size(); i++) {
+			if (valid[i] == 0.0) {
+				utilities[i] = Double.NEGATIVE_INFINITY;
+				continue;
+			}
+
+			double utility = 0.0;
+
+			utility += constantUtility;
+			utility += estimateTravelTimeUtility(parameters, inVehicleTime_min[i]);
+			utility += estimateWaitingTimeUtility(parameters, waitingTime_min[i]);
+			utility += estimateWorkUtility(parameters, work[i] != 0.0);
+			utility += estimateCostUtility(parameters, cost[i]);
+
+			utilities[i] = utility;
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package abmt2025.project.mode_choice.estimators;
+
+import org.eqasim.core.simulation.mode_choice.utilities.estimators.EstimatorUtils;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import abmt2025.project.mode_choice.AstraModeParameters_DRT;
+
+/**
+ * Interaction factors of the Astra estimators, shared by all modes of a trip.
+ *
+ * The distance and income interactions are powers, and the same factor is
+ * needed by every mode (and twice by PT) of the trip under evaluation. Each
+ * replanning thread remembers the last argument and result per factor, so the
+ * power is computed once per trip and person. The cached value is the result
+ * of {@link EstimatorUtils#interaction} for exactly the same argument, so
+ * utilities do not change.
+ */
+@Singleton
+public class TripInteractionContext {
+	private final double referenceEuclideanDistance_km;
+	private final double lambdaTravelTimeEuclideanDistance;
+	private final double referenceHouseholdIncome_MU;
+	private final double lambdaCostHouseholdIncome;
+
+	private final ThreadLocal<Memo> memo = ThreadLocal.withInitial(Memo::new);
+
+	@Inject
+	public TripInteractionContext(AstraModeParameters_DRT parameters) {
+		this.referenceEuclideanDistance_km = parameters.referenceEuclideanDistance_km;
+		this.lambdaTravelTimeEuclideanDistance = parameters.lambdaTravelTimeEuclideanDistance;
+		this.referenceHouseholdIncome_MU = parameters.referenceHouseholdIncome_MU;
+		this.lambdaCostHouseholdIncome = parameters.lambdaCostHouseholdIncome;
+	}
+
+	/**
+	 * Factor of the travel time utilities for the given euclidean distance.
+	 */
+	public double getTravelTimeDistanceInteraction(double euclideanDistance_km) {
+		Memo memo = this.memo.get();
+		long key = Double.doubleToRawLongBits(euclideanDistance_km);
+
+		if (!memo.hasDistance || memo.distanceKey != key) {
+			memo.distanceInteraction = EstimatorUtils.interaction(euclideanDistance_km,
+					referenceEuclideanDistance_km, lambdaTravelTimeEuclideanDistance);
+			memo.distanceKey = key;
+			memo.hasDistance = true;
+		}
+
+		return memo.distanceInteraction;
+	}
+
+	/**
+	 * Factor of the monetary cost utilities for the given household income.
+	 */
+	public double getCostIncomeInteraction(double householdIncome_MU) {
+		Memo memo = this.memo.get();
+		long key = Double.doubleToRawLongBits(householdIncome_MU);
+
+		if (!memo.hasIncome || memo.incomeKey != key) {
+			memo.incomeInteraction = EstimatorUtils.interaction(householdIncome_MU, referenceHouseholdIncome_MU,
+					lambdaCostHouseholdIncome);
+			memo.incomeKey = key;
+			memo.hasIncome = true;
+		}
+
+		return memo.incomeInteraction;
+	}
+
+	static private class Memo {
+		boolean hasDistance = false;
+		long distanceKey;
+		double distanceInteraction;
+
+		boolean hasIncome = false;
+		long incomeKey;
+		double incomeInteraction;
+	}
+}
@@ -0,0 +1,58 @@
+package abmt2025.project.mode_choice.estimators;
+
+import java.util.Arrays;
+
+/**
+ * A block of trips in structure-of-arrays layout for batch utility evaluation:
+ * one primitive column per variable, indexed by the row of the trip. The
+ * columns are defined by an enum of the respective estimator. Boolean variables
+ * are stored as 1.0 and 0.0.
+ *
+ * Blocks are not thread-safe and are meant to be reused, see {@link #clear()}.
+ */
+public class UtilityBlock<C extends Enum<C>> {
+	private double[][] columns;
+	private int size = 0;
+
+	public UtilityBlock(Class<C> columnType, int capacity) {
+		this.columns = new double[columnType.getEnumConstants().length][Math.max(1, capacity)];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Appends a row and returns its index. The values of the row are undefined
+	 * until they are set.
+	 */
+	public int addRow() {
+		if (size == columns[0].length) {
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = Arrays.copyOf(columns[i], 2 * size);
+			}
+		}
+
+		return size++;
+	}
+
+	public void set(int row, C column, double value) {
+		columns[column.ordinal()][row] = value;
+	}
+
+	public void set(int row, C column, boolean value) {
+		columns[column.ordinal()][row] = value ? 1.0 : 0.0;
+	}
+
+	/**
+	 * Returns the backing array of the column. It may be longer than
+	 * {@link #size()} and is replaced when rows are added beyond the capacity.
+	 */
+	public double[] getColumn(C column) {
+		return columns[column.ordinal()];
+	}
+}
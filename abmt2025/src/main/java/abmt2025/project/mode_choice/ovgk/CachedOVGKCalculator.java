@@ -0,0 +1,177 @@
+package abmt2025.project.mode_choice.ovgk;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eqasim.switzerland.ovgk.OVGK;
+import org.eqasim.switzerland.ovgk.OVGKCalculator;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.Config;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.facilities.ActivityFacilities;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+
+import abmt2025.project.config.AstraConfigGroup;
+
+/**
+ * OVGK calculator that remembers the result per coordinate. Activity
+ * coordinates repeat across trips, plans and iterations, so after the first
+ * lookup the nearest stop search is replaced by a hash lookup.
+ *
+ * The cache can be filled up front in parallel (see {@link #precompute}) and
+ * written to and read from a CSV file with the columns x;y;ovgk, so that the
+ * values can be computed once per schedule by RunComputeOVGK.
+ */
+public class CachedOVGKCalculator extends OVGKCalculator {
+	private static final Logger log = LogManager.getLogger(CachedOVGKCalculator.class);
+
+	private final Map<Coord, OVGK> cache = new ConcurrentHashMap<>();
+
+	public CachedOVGKCalculator(TransitSchedule schedule) {
+		super(schedule);
+	}
+
+	@Override
+	public OVGK calculateOVGK(Coord coord) {
+		OVGK ovgk = cache.get(coord);
+
+		if (ovgk == null) {
+			ovgk = super.calculateOVGK(coord);
+			cache.putIfAbsent(coord, ovgk);
+		}
+
+		return ovgk;
+	}
+
+	/**
+	 * Creates the calculator as configured in the astra config group: optionally
+	 * loads the cache from ovgkCachePath and fills in the remaining activity and
+	 * facility coordinates if precomputeOvgk is set.
+	 */
+	static public CachedOVGKCalculator create(Config config, TransitSchedule schedule, Population population,
+			ActivityFacilities facilities) {
+		AstraConfigGroup astraConfig = AstraConfigGroup.get(config);
+		CachedOVGKCalculator calculator = new CachedOVGKCalculator(schedule);
+
+		if (astraConfig.getOvgkCachePath() != null) {
+			calculator.read(new File(astraConfig.getOvgkCachePath()));
+		}
+
+		if (astraConfig.getPrecomputeOvgk()) {
+			calculator.precompute(collectCoords(population, facilities), config.global().getNumberOfThreads());
+		}
+
+		return calculator;
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Computes the OVGK for all given coordinates that are not cached yet.
+	 */
+	public void precompute(Collection<Coord> coords, int numberOfThreads) {
+		long startTime = System.currentTimeMillis();
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, numberOfThreads));
+
+		try {
+			pool.submit(() -> coords.parallelStream().forEach(this::calculateOVGK)).get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
+		} finally {
+			pool.shutdown();
+		}
+
+		log.info("Precomputed OVGK for {} coordinates in {} ms using {} threads", coords.size(),
+				System.currentTimeMillis() - startTime, numberOfThreads);
+	}
+
+	/**
+	 * Collects the coordinates of all main activities in the population and of all
+	 * facilities.
+	 */
+	static public Set<Coord> collectCoords(Population population, ActivityFacilities facilities) {
+		Set<Coord> coords = new HashSet<>();
+
+		for (Person person : population.getPersons().values()) {
+			for (Plan plan : person.getPlans()) {
+				for (PlanElement element : plan.getPlanElements()) {
+					if (element instanceof Activity) {
+						Activity activity = (Activity) element;
+
+						if (!TripStructureUtils.isStageActivityType(activity.getType()) && activity.getCoord() != null) {
+							coords.add(activity.getCoord());
+						}
+					}
+				}
+			}
+		}
+
+		if (facilities != null) {
+			for (ActivityFacility facility : facilities.getFacilities().values()) {
+				if (facility.getCoord() != null) {
+					coords.add(facility.getCoord());
+				}
+			}
+		}
+
+		return coords;
+	}
+
+	public void write(File path) {
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(path.toString())) {
+			writer.write("x;y;ovgk\n");
+
+			for (Map.Entry<Coord, OVGK> entry : cache.entrySet()) {
+				writer.write(entry.getKey().getX() + ";" + entry.getKey().getY() + ";" + entry.getValue().name() + "\n");
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		log.info("Wrote OVGK for {} coordinates to {}", cache.size(), path);
+	}
+
+	public void read(File path) {
+		int numberOfEntries = 0;
+
+		try (BufferedReader reader = IOUtils.getBufferedReader(path.toString())) {
+			String line = reader.readLine();
+
+			if (line == null || !line.equals("x;y;ovgk")) {
+				throw new IllegalStateException("Not an OVGK file: " + path);
+			}
+
+			while ((line = reader.readLine()) != null) {
+				String[] values = line.split(";");
+				Coord coord = new Coord(Double.parseDouble(values[0]), Double.parseDouble(values[1]));
+				cache.put(coord, OVGK.valueOf(values[2]));
+				numberOfEntries++;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		log.info("Read OVGK for {} coordinates from {}", numberOfEntries, path);
+	}
+}
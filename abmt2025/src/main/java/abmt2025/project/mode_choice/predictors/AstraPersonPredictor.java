@@ -14,16 +14,18 @@ import abmt2025.project.mode_choice.variables.AstraPersonVariables;
 
 public class AstraPersonPredictor extends CachedVariablePredictor<AstraPersonVariables> {
 	public final SwissPersonPredictor delegate;
+	private final AstraPersonTable personTable;
 
 	@Inject
-	public AstraPersonPredictor(SwissPersonPredictor delegate) {
+	public AstraPersonPredictor(SwissPersonPredictor delegate, AstraPersonTable personTable) {
 		this.delegate = delegate;
+		this.personTable = personTable;
 	}
 
 	@Override
 	protected AstraPersonVariables predict(Person person, DiscreteModeChoiceTrip trip,
 			List<? extends PlanElement> elements) {
-		double householdIncome_MU = AstraPredictorUtils.getHouseholdIncome(person);
+		double householdIncome_MU = personTable.getHouseholdIncome(person);
 		return new AstraPersonVariables(delegate.predictVariables(person, trip, elements), householdIncome_MU);
 	}
 }
@@ -0,0 +1,63 @@
+package abmt2025.project.mode_choice.predictors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Population;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Household incomes that {@link AstraPersonPredictor} reads on every trip
+ * evaluation, stored in a primitive column by the index of the person id. Age
+ * and subscriptions are predicted by eqasim's person predictor.
+ *
+ * The table is built once when the controller is set up, that is after the
+ * scenario has been adjusted by the configurators. Persons that are not part of
+ * the table, for instance because they were added later, are read from their
+ * attributes.
+ */
+@Singleton
+public class AstraPersonTable {
+	private static final Logger log = LogManager.getLogger(AstraPersonTable.class);
+
+	private final double[] householdIncomes;
+	private final boolean[] known;
+
+	@Inject
+	public AstraPersonTable(Population population) {
+		int numberOfPersonIds = 0;
+
+		for (Person person : population.getPersons().values()) {
+			numberOfPersonIds = Math.max(numberOfPersonIds, person.getId().index() + 1);
+		}
+
+		this.householdIncomes = new double[numberOfPersonIds];
+		this.known = new boolean[numberOfPersonIds];
+
+		int numberOfPersons = 0;
+
+		for (Person person : population.getPersons().values()) {
+			Object householdIncome = person.getAttributes().getAttribute("householdIncome");
+
+			// Freight agents and the like have no socio-demographics, they stay unknown
+			if (householdIncome == null) {
+				continue;
+			}
+
+			int index = person.getId().index();
+			householdIncomes[index] = (Double) householdIncome;
+			known[index] = true;
+			numberOfPersons++;
+		}
+
+		log.info("Cached household incomes of {} persons", numberOfPersons);
+	}
+
+	public double getHouseholdIncome(Person person) {
+		int index = person.getId().index();
+		return index < known.length && known[index] ? householdIncomes[index]
+				: AstraPredictorUtils.getHouseholdIncome(person);
+	}
+}
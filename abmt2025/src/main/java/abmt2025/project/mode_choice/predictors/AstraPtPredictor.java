@@ -1,8 +1,9 @@
 package abmt2025.project.mode_choice.predictors;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.eqasim.core.simulation.mode_choice.utilities.predictors.CachedVariablePredictor;
 import org.eqasim.core.simulation.mode_choice.utilities.predictors.PtPredictor;
@@ -18,11 +19,11 @@ import org.matsim.contribs.discrete_mode_choice.model.DiscreteModeChoiceTrip;
 import org.matsim.contrib.drt.routing.DrtRoute;
 import org.matsim.core.population.PopulationUtils;
 import org.matsim.pt.routes.TransitPassengerRoute;
-import org.matsim.pt.transitSchedule.api.TransitRoute;
-import org.matsim.pt.transitSchedule.api.TransitSchedule;
 
 import com.google.inject.Inject;
 
+import abmt2025.project.mode_choice.routing.DrtFilterMetrics;
+import abmt2025.project.mode_choice.routing.DrtFilterMetrics.Counter;
 import abmt2025.project.mode_choice.routing.DrtIntermodalFilterModule;
 import abmt2025.project.mode_choice.routing.DrtServiceAreaFilter;
 import abmt2025.project.mode_choice.variables.AstraPtVariables;
@@ -34,21 +35,20 @@ public class AstraPtPredictor extends CachedVariablePredictor<AstraPtVariables>
 	private static final Logger log = LogManager.getLogger(AstraPtPredictor.class);
 
 	public final PtPredictor delegate;
-	private final TransitSchedule schedule;
+	private final TransitCategoryIndex categoryIndex;
 	private final OVGKCalculator ovgkCalculator;
 	private DrtServiceAreaFilter serviceAreaFilter; // Not final - set via optional injection
 
-	// Statistics for logging (thread-safe)
-	private static final AtomicLong ptTripsProcessed = new AtomicLong(0);
-	private static final AtomicLong ptTripsWithDrt = new AtomicLong(0);
-	private static final AtomicLong ptTripsWithDrtInServiceArea = new AtomicLong(0);
-	private static final AtomicLong ptTripsWithDrtOutsideServiceArea = new AtomicLong(0);
+	// Statistics (shared by all replanning threads of the controller)
+	private final DrtFilterMetrics metrics;
 
 	@Inject
-	public AstraPtPredictor(PtPredictor delegate, TransitSchedule schedule, OVGKCalculator ovgkCalculator) {
+	public AstraPtPredictor(PtPredictor delegate, TransitCategoryIndex categoryIndex, OVGKCalculator ovgkCalculator,
+			DrtFilterMetrics metrics) {
 		this.delegate = delegate;
-		this.schedule = schedule;
+		this.categoryIndex = categoryIndex;
 		this.ovgkCalculator = ovgkCalculator;
+		this.metrics = metrics;
 		this.serviceAreaFilter = null;
 		log.info("AstraPtPredictor initialized (filter will be set via setter if available)");
 	}
@@ -66,16 +66,64 @@ public class AstraPtPredictor extends CachedVariablePredictor<AstraPtVariables>
 	}
 
 	/**
-	 * Log statistics about PT+DRT trips processed.
-	 * Call this at the end of simulation to see summary.
+	 * Per-thread buffers to present the elements to the delegate with DRT legs
+	 * replaced, without copying the list or creating new legs for every call.
 	 */
-	public static void logStatistics() {
-		log.info("=== AstraPtPredictor DRT Statistics ===");
-		log.info("  Total PT trips processed: {}", ptTripsProcessed.get());
-		log.info("  PT trips with DRT access/egress: {} ({}%)", ptTripsWithDrt.get(),
-				ptTripsProcessed.get() > 0 ? String.format("%.1f", 100.0 * ptTripsWithDrt.get() / ptTripsProcessed.get()) : "0.0");
-		log.info("  PT+DRT trips with origin/dest in service area: {}", ptTripsWithDrtInServiceArea.get());
-		log.info("  PT+DRT trips with origin/dest outside service area: {}", ptTripsWithDrtOutsideServiceArea.get());
+	static private class DelegateScratch {
+		PlanElement[] replacements = new PlanElement[16];
+		final List<Leg> walkLegs = new ArrayList<>();
+
+		void prepare(int numberOfElements) {
+			if (replacements.length < numberOfElements) {
+				replacements = new PlanElement[Math.max(numberOfElements, 2 * replacements.length)];
+			} else {
+				// A previous call may have failed before releasing its replacements
+				Arrays.fill(replacements, 0, numberOfElements, null);
+			}
+		}
+
+		Leg getWalkLeg(int index) {
+			while (walkLegs.size() <= index) {
+				walkLegs.add(PopulationUtils.createLeg(TransportMode.walk));
+			}
+
+			return walkLegs.get(index);
+		}
+
+		void release(int numberOfElements, int numberOfWalkLegs) {
+			// Do not keep plan elements of other agents reachable
+			Arrays.fill(replacements, 0, numberOfElements, null);
+
+			for (int index = 0; index < numberOfWalkLegs; index++) {
+				walkLegs.get(index).setRoute(null);
+			}
+		}
+	}
+
+	static private final ThreadLocal<DelegateScratch> DELEGATE_SCRATCH = ThreadLocal.withInitial(DelegateScratch::new);
+
+	/**
+	 * Read-only view on the trip elements with some of them replaced.
+	 */
+	static private class ReplacedElementsView extends AbstractList<PlanElement> {
+		private final List<? extends PlanElement> elements;
+		private final PlanElement[] replacements;
+
+		ReplacedElementsView(List<? extends PlanElement> elements, DelegateScratch scratch) {
+			this.elements = elements;
+			this.replacements = scratch.replacements;
+		}
+
+		@Override
+		public PlanElement get(int index) {
+			PlanElement replacement = replacements[index];
+			return replacement == null ? elements.get(index) : replacement;
+		}
+
+		@Override
+		public int size() {
+			return elements.size();
+		}
 	}
 
 	/**
@@ -89,7 +137,7 @@ public class AstraPtPredictor extends CachedVariablePredictor<AstraPtVariables>
 	protected AstraPtVariables predict(Person person, DiscreteModeChoiceTrip trip,
 			List<? extends PlanElement> elements) {
 
-		ptTripsProcessed.incrementAndGet();
+		metrics.increment(Counter.PT_TRIPS_PROCESSED);
 
 		// Get trip origin and destination for service area checking
 		Coord originCoord = trip.getOriginActivity().getCoord();
@@ -101,17 +149,29 @@ public class AstraPtPredictor extends CachedVariablePredictor<AstraPtVariables>
 		boolean hasDrtAccess = false;
 		int drtLegCount = 0;
 
-		// Create filtered elements list, replacing DRT legs with walk legs for the delegate
-		List<PlanElement> filteredElements = new ArrayList<>();
+		double railTravelTime_min = 0.0;
+		double busTravelTime_min = 0.0;
+		double tramTravelTime_min = 0.0;
+		double boatTravelTime_min = 0.0;
+
+		// Single pass over the elements: DRT legs are collected and replaced by
+		// pooled walk legs for the delegate, PT legs are classified into rail and bus
+		DelegateScratch scratch = DELEGATE_SCRATCH.get();
+		int numberOfElements = elements.size();
+
+		for (int index = 0; index < numberOfElements; index++) {
+			PlanElement element = elements.get(index);
 
-		for (PlanElement element : elements) {
 			if (element instanceof Leg) {
 				Leg leg = (Leg) element;
+				String mode = leg.getMode();
 
-				if (isDrtMode(leg.getMode())) {
+				if (isDrtMode(mode)) {
 					// This is a DRT access/egress leg (either "drt" or "drt_access")
-					hasDrtAccess = true;
-					drtLegCount++;
+					if (!hasDrtAccess) {
+						scratch.prepare(numberOfElements);
+						hasDrtAccess = true;
+					}
 
 					// Extract DRT-specific times
 					if (leg.getRoute() instanceof DrtRoute) {
@@ -126,21 +186,36 @@ public class AstraPtPredictor extends CachedVariablePredictor<AstraPtVariables>
 
 					// Replace DRT leg with a walk leg for the delegate predictor
 					// This allows the base PtPredictor to process the trip
-					Leg walkLeg = PopulationUtils.createLeg(TransportMode.walk);
+					Leg walkLeg = scratch.getWalkLeg(drtLegCount);
 					walkLeg.setTravelTime(leg.getTravelTime().seconds());
 					walkLeg.setRoute(leg.getRoute()); // Keep route for distance calculation
-					filteredElements.add(walkLeg);
-				} else {
-					filteredElements.add(element);
+					scratch.replacements[index] = walkLeg;
+
+					drtLegCount++;
+				} else if (mode.equals(TransportMode.pt)) {
+					TransitPassengerRoute route = (TransitPassengerRoute) leg.getRoute();
+					TransitCategory category = categoryIndex.getCategory(route.getLineId(), route.getRouteId());
+					double travelTime_min = route.getTravelTime().seconds() / 60.0;
+
+					if (category == TransitCategory.RAIL) {
+						railTravelTime_min += travelTime_min;
+					} else {
+						// Everything that is not rail counts as bus in the utility
+						busTravelTime_min += travelTime_min;
+
+						if (category == TransitCategory.TRAM) {
+							tramTravelTime_min += travelTime_min;
+						} else if (category == TransitCategory.BOAT) {
+							boatTravelTime_min += travelTime_min;
+						}
+					}
 				}
-			} else {
-				filteredElements.add(element);
 			}
 		}
 
 		// Log DRT access/egress statistics
 		if (hasDrtAccess) {
-			ptTripsWithDrt.incrementAndGet();
+			metrics.increment(Counter.PT_TRIPS_WITH_DRT);
 
 			// Check if origin or destination is in service area
 			boolean originInServiceArea = false;
@@ -151,9 +226,9 @@ public class AstraPtPredictor extends CachedVariablePredictor<AstraPtVariables>
 				destInServiceArea = serviceAreaFilter.isInsideServiceArea(destCoord);
 
 				if (originInServiceArea || destInServiceArea) {
-					ptTripsWithDrtInServiceArea.incrementAndGet();
+					metrics.increment(Counter.PT_TRIPS_WITH_DRT_IN_SERVICE_AREA);
 				} else {
-					ptTripsWithDrtOutsideServiceArea.incrementAndGet();
+					metrics.increment(Counter.PT_TRIPS_WITH_DRT_OUTSIDE_SERVICE_AREA);
 				}
 			}
 
@@ -170,37 +245,21 @@ public class AstraPtPredictor extends CachedVariablePredictor<AstraPtVariables>
 						String.format("%.0f", destCoord.getX()),
 						String.format("%.0f", destCoord.getY()));
 			}
-
-			// Periodic info logging (every 1000 PT+DRT trips)
-			long drtCount = ptTripsWithDrt.get();
-			if (drtCount % 1000 == 0) {
-				log.info("PT+DRT trips processed: {}, inServiceArea: {}, outsideServiceArea: {}",
-						drtCount, ptTripsWithDrtInServiceArea.get(), ptTripsWithDrtOutsideServiceArea.get());
-			}
 		}
 
-		// Call delegate with filtered elements (DRT legs replaced with walk legs)
-		PtVariables delegateVariables = delegate.predictVariables(person, trip, filteredElements);
+		// Call delegate with DRT legs replaced by walk legs. Trips without DRT are
+		// passed as they are. The view is a new object per call, since the delegate
+		// caches its result by the identity of the element list.
+		PtVariables delegateVariables;
 
-		double railTravelTime_min = 0.0;
-		double busTravelTime_min = 0.0;
-
-		for (PlanElement element : elements) {
-			if (element instanceof Leg) {
-				Leg leg = (Leg) element;
-
-				if (leg.getMode().equals(TransportMode.pt)) {
-					TransitPassengerRoute route = (TransitPassengerRoute) leg.getRoute();
-					TransitRoute transitRoute = schedule.getTransitLines().get(route.getLineId()).getRoutes()
-							.get(route.getRouteId());
-
-					if (transitRoute.getTransportMode().equals("rail")) {
-						railTravelTime_min += route.getTravelTime().seconds() / 60.0;
-					} else {
-						busTravelTime_min += route.getTravelTime().seconds() / 60.0;
-					}
-				}
+		if (hasDrtAccess) {
+			try {
+				delegateVariables = delegate.predictVariables(person, trip, new ReplacedElementsView(elements, scratch));
+			} finally {
+				scratch.release(numberOfElements, drtLegCount);
 			}
+		} else {
+			delegateVariables = delegate.predictVariables(person, trip, elements);
 		}
 
 		Double headwayRaw = (Double) trip.getOriginActivity().getAttributes().getAttribute("headway_min");
@@ -210,7 +269,7 @@ public class AstraPtPredictor extends CachedVariablePredictor<AstraPtVariables>
 		OVGK destinationOvgk = ovgkCalculator.calculateOVGK(trip.getDestinationActivity().getCoord());
 		OVGK worstOvgk = originOvgk.ordinal() > destinationOvgk.ordinal() ? originOvgk : destinationOvgk;
 
-		return new AstraPtVariables(delegateVariables, railTravelTime_min, busTravelTime_min, headway_min, worstOvgk,
-				drtTravelTime_min, drtWaitingTime_min, hasDrtAccess);
+		return new AstraPtVariables(delegateVariables, railTravelTime_min, busTravelTime_min, tramTravelTime_min,
+				boatTravelTime_min, headway_min, worstOvgk, drtTravelTime_min, drtWaitingTime_min, hasDrtAccess);
 	}
 }
@@ -7,17 +7,26 @@ import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.PlanElement;
 import org.matsim.contribs.discrete_mode_choice.model.DiscreteModeChoiceTrip;
 
+import com.google.inject.Inject;
+
 import abmt2025.project.mode_choice.variables.AstraTripVariables;
 
 public class AstraTripPredictor extends CachedVariablePredictor<AstraTripVariables> {
+	private final TripAttributeTable attributeTable;
+
+	@Inject
+	public AstraTripPredictor(TripAttributeTable attributeTable) {
+		this.attributeTable = attributeTable;
+	}
+
 	@Override
 	protected AstraTripVariables predict(Person person, DiscreteModeChoiceTrip trip,
 			List<? extends PlanElement> elements) {
 		boolean isWork = AstraPredictorUtils.hasPurposeWork(trip.getOriginActivity())
 				|| AstraPredictorUtils.hasPurposeWork(trip.getDestinationActivity());
 
-		boolean isCity = AstraPredictorUtils.isInsideCity(trip.getOriginActivity())
-				|| AstraPredictorUtils.isInsideCity(trip.getDestinationActivity());
+		boolean isCity = attributeTable.isInsideCity(trip.getOriginActivity())
+				|| attributeTable.isInsideCity(trip.getDestinationActivity());
 
 		return new AstraTripVariables(isWork, isCity);
 	}
@@ -0,0 +1,25 @@
+package abmt2025.project.mode_choice.predictors;
+
+/**
+ * Vehicle category of a transit route, derived from its transport mode.
+ */
+public enum TransitCategory {
+	RAIL, BUS, TRAM, BOAT, OTHER;
+
+	static public TransitCategory fromTransportMode(String mode) {
+		switch (mode) {
+		case "rail":
+			return RAIL;
+		case "bus":
+			return BUS;
+		case "tram":
+			return TRAM;
+		case "ferry":
+		case "boat":
+		case "ship":
+			return BOAT;
+		default:
+			return OTHER;
+		}
+	}
+}
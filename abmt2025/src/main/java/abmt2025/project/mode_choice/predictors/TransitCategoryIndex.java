@@ -0,0 +1,71 @@
+package abmt2025.project.mode_choice.predictors;
+
+import java.util.Arrays;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Maps transit routes to their {@link TransitCategory} by the index of the route
+ * id, so that classifying a PT leg is an array read instead of two map lookups
+ * and a string comparison.
+ *
+ * Route ids are only unique within a line. If routes of different lines share an
+ * id but not the category, or if the route id was created after the index, the
+ * category is looked up in the schedule.
+ */
+@Singleton
+public class TransitCategoryIndex {
+	static private final byte UNKNOWN = -1;
+	static private final byte AMBIGUOUS = -2;
+
+	static private final TransitCategory[] CATEGORIES = TransitCategory.values();
+
+	private final TransitSchedule schedule;
+	private final byte[] routeCategories;
+
+	@Inject
+	public TransitCategoryIndex(TransitSchedule schedule) {
+		this.schedule = schedule;
+
+		int numberOfRouteIds = 0;
+
+		for (TransitLine line : schedule.getTransitLines().values()) {
+			for (TransitRoute route : line.getRoutes().values()) {
+				numberOfRouteIds = Math.max(numberOfRouteIds, route.getId().index() + 1);
+			}
+		}
+
+		this.routeCategories = new byte[numberOfRouteIds];
+		Arrays.fill(routeCategories, UNKNOWN);
+
+		for (TransitLine line : schedule.getTransitLines().values()) {
+			for (TransitRoute route : line.getRoutes().values()) {
+				int index = route.getId().index();
+				byte category = (byte) TransitCategory.fromTransportMode(route.getTransportMode()).ordinal();
+
+				if (routeCategories[index] == UNKNOWN) {
+					routeCategories[index] = category;
+				} else if (routeCategories[index] != category) {
+					routeCategories[index] = AMBIGUOUS;
+				}
+			}
+		}
+	}
+
+	public TransitCategory getCategory(Id<TransitLine> lineId, Id<TransitRoute> routeId) {
+		int index = routeId.index();
+
+		if (index < routeCategories.length && routeCategories[index] >= 0) {
+			return CATEGORIES[routeCategories[index]];
+		}
+
+		TransitRoute route = schedule.getTransitLines().get(lineId).getRoutes().get(routeId);
+		return TransitCategory.fromTransportMode(route.getTransportMode());
+	}
+}
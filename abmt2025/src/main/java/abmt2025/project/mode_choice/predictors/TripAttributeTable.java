@@ -0,0 +1,130 @@
+package abmt2025.project.mode_choice.predictors;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.Config;
+import org.matsim.facilities.ActivityFacilities;
+import org.matsim.facilities.ActivityFacility;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * City flags of activities, so that {@link AstraTripPredictor} does not unbox
+ * the "city" attribute of both trip ends on every call.
+ *
+ * The flag is kept per facility, by the index of the facility id. This assumes
+ * that the "city" attribute describes the location, i.e. that all activities at
+ * one facility carry the same flag. Replanning only copies the activities of
+ * the initial plans, so it is enough to check the assumption once: at startup
+ * all plans are walked in parallel and the values seen at every facility are
+ * collected. Facilities with conflicting flags are reported and, like
+ * activities without a facility or at facilities that do not occur in the
+ * initial plans, read from the activity attributes.
+ *
+ * The trip purpose is a plain comparison of the activity type and is left to
+ * {@link AstraPredictorUtils#hasPurposeWork}.
+ */
+@Singleton
+public class TripAttributeTable {
+	private static final Logger log = LogManager.getLogger(TripAttributeTable.class);
+
+	static private final byte CITY_UNKNOWN = 0;
+	static private final byte CITY_OUTSIDE = 1;
+	static private final byte CITY_INSIDE = 2;
+	static private final byte CITY_AMBIGUOUS = CITY_OUTSIDE | CITY_INSIDE;
+
+	private final byte[] facilityCityFlags;
+
+	@Inject
+	public TripAttributeTable(Population population, ActivityFacilities facilities, Config config) {
+		int numberOfFacilityIds = 0;
+
+		for (ActivityFacility facility : facilities.getFacilities().values()) {
+			numberOfFacilityIds = Math.max(numberOfFacilityIds, facility.getId().index() + 1);
+		}
+
+		long startTime = System.currentTimeMillis();
+		int numberOfThreads = Math.max(1, config.global().getNumberOfThreads());
+		ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+
+		AtomicIntegerArray flags = new AtomicIntegerArray(numberOfFacilityIds);
+
+		try {
+			pool.submit(() -> population.getPersons().values().parallelStream()
+					.forEach(person -> addPerson(person, flags))).get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
+		} finally {
+			pool.shutdown();
+		}
+
+		this.facilityCityFlags = new byte[numberOfFacilityIds];
+
+		int numberOfFacilities = 0;
+		int numberOfAmbiguousFacilities = 0;
+
+		for (int i = 0; i < numberOfFacilityIds; i++) {
+			facilityCityFlags[i] = (byte) flags.get(i);
+
+			if (facilityCityFlags[i] != CITY_UNKNOWN) {
+				numberOfFacilities++;
+			}
+
+			if (facilityCityFlags[i] == CITY_AMBIGUOUS) {
+				numberOfAmbiguousFacilities++;
+			}
+		}
+
+		log.info("Indexed the city flag of {} facilities in {} ms", numberOfFacilities,
+				System.currentTimeMillis() - startTime);
+
+		if (numberOfAmbiguousFacilities > 0) {
+			log.warn("{} facilities host activities with different city flags, these are read from the activities",
+					numberOfAmbiguousFacilities);
+		}
+	}
+
+	static private void addPerson(Person person, AtomicIntegerArray flags) {
+		for (Plan plan : person.getPlans()) {
+			for (PlanElement element : plan.getPlanElements()) {
+				if (element instanceof Activity) {
+					Activity activity = (Activity) element;
+					Id<ActivityFacility> facilityId = activity.getFacilityId();
+
+					if (facilityId != null && facilityId.index() < flags.length()) {
+						int flag = AstraPredictorUtils.isInsideCity(activity) ? CITY_INSIDE : CITY_OUTSIDE;
+						flags.accumulateAndGet(facilityId.index(), flag, (a, b) -> a | b);
+					}
+				}
+			}
+		}
+	}
+
+	public boolean isInsideCity(Activity activity) {
+		Id<ActivityFacility> facilityId = activity.getFacilityId();
+
+		if (facilityId != null && facilityId.index() < facilityCityFlags.length) {
+			byte flags = facilityCityFlags[facilityId.index()];
+
+			if (flags == CITY_INSIDE) {
+				return true;
+			} else if (flags == CITY_OUTSIDE) {
+				return false;
+			}
+		}
+
+		// No facility, not part of the initial plans or conflicting flags
+		return AstraPredictorUtils.isInsideCity(activity);
+	}
+}
@@ -0,0 +1,245 @@
+package abmt2025.project.mode_choice.routing;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the DRT service area filter, the DRT intermodal filter and the PT
+ * predictor, shared by all replanning threads of one controller.
+ *
+ * Counters are striped (LongAdder), so that concurrent updates do not contend.
+ * Delegate routing calls are timed into a histogram with power-of-two buckets
+ * in microseconds. {@link #snapshot()} hands out the values of the current
+ * iteration and starts counting anew, the totals over the run are kept for
+ * logging at shutdown.
+ */
+@Singleton
+public class DrtFilterMetrics {
+
+    private static final Logger log = LogManager.getLogger(DrtFilterMetrics.class);
+
+    public enum Counter {
+        SERVICE_AREA_INSIDE("serviceAreaInside"),
+        SERVICE_AREA_OUTSIDE("serviceAreaOutside"),
+        SERVICE_AREA_PRECOMPUTED("serviceAreaPrecomputed"),
+        ROUTING_ATTEMPTS("routingAttempts"),
+        ROUTING_ALLOWED("routingAllowed"),
+        ROUTING_FILTERED("routingFiltered"),
+        ROUTING_BOTH_INSIDE("routingBothInside"),
+        ROUTING_FROM_INSIDE_ONLY("routingFromInsideOnly"),
+        ROUTING_TO_INSIDE_ONLY("routingToInsideOnly"),
+        PT_TRIPS_PROCESSED("ptTripsProcessed"),
+        PT_TRIPS_WITH_DRT("ptTripsWithDrt"),
+        PT_TRIPS_WITH_DRT_IN_SERVICE_AREA("ptTripsWithDrtInServiceArea"),
+        PT_TRIPS_WITH_DRT_OUTSIDE_SERVICE_AREA("ptTripsWithDrtOutsideServiceArea");
+
+        private final String columnName;
+
+        Counter(String columnName) {
+            this.columnName = columnName;
+        }
+
+        public String getColumnName() {
+            return columnName;
+        }
+    }
+
+    /** Bucket i holds calls of [2^(i-1), 2^i) microseconds, the last one everything above */
+    public static final int NUMBER_OF_LATENCY_BUCKETS = 32;
+
+    private final LongAdder[] counters = createAdders(Counter.values().length);
+    private final LongAdder[] latencyBuckets = createAdders(NUMBER_OF_LATENCY_BUCKETS);
+    private final LongAdder latencyTotal_ns = new LongAdder();
+
+    private final Snapshot total = new Snapshot();
+
+    @Inject
+    public DrtFilterMetrics() {
+    }
+
+    private static LongAdder[] createAdders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+
+        return adders;
+    }
+
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    public void recordDelegateCall(long duration_ns) {
+        long duration_us = Math.max(0, duration_ns / 1000);
+        int bucket = Math.min(NUMBER_OF_LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(duration_us));
+
+        latencyBuckets[bucket].increment();
+        latencyTotal_ns.add(duration_ns);
+    }
+
+    /**
+     * Values over some period.
+     */
+    public static class Snapshot {
+        private final long[] counts = new long[Counter.values().length];
+        private final long[] latencyBuckets = new long[NUMBER_OF_LATENCY_BUCKETS];
+        private long latencyTotal_ns;
+
+        public long get(Counter counter) {
+            return counts[counter.ordinal()];
+        }
+
+        public long getDelegateCalls() {
+            long calls = 0;
+
+            for (long count : latencyBuckets) {
+                calls += count;
+            }
+
+            return calls;
+        }
+
+        public double getMeanDelegateLatency_ms() {
+            long calls = getDelegateCalls();
+            return calls > 0 ? 1e-6 * latencyTotal_ns / calls : 0.0;
+        }
+
+        /**
+         * Upper bound of the latency bucket that contains the given quantile.
+         */
+        public double getDelegateLatencyQuantile_ms(double quantile) {
+            long calls = getDelegateCalls();
+
+            if (calls == 0) {
+                return 0.0;
+            }
+
+            long threshold = (long) Math.ceil(quantile * calls);
+            long cumulative = 0;
+
+            for (int bucket = 0; bucket < NUMBER_OF_LATENCY_BUCKETS; bucket++) {
+                cumulative += latencyBuckets[bucket];
+
+                if (cumulative >= threshold) {
+                    return 1e-3 * (1L << bucket);
+                }
+            }
+
+            return Double.POSITIVE_INFINITY;
+        }
+
+        private void add(Snapshot other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+
+            for (int i = 0; i < latencyBuckets.length; i++) {
+                latencyBuckets[i] += other.latencyBuckets[i];
+            }
+
+            latencyTotal_ns += other.latencyTotal_ns;
+        }
+    }
+
+    /**
+     * Returns the values since the last call and starts counting anew. Meant to be
+     * called once per iteration.
+     */
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+
+        for (int i = 0; i < counters.length; i++) {
+            snapshot.counts[i] = counters[i].sumThenReset();
+        }
+
+        for (int i = 0; i < latencyBuckets.length; i++) {
+            snapshot.latencyBuckets[i] = latencyBuckets[i].sumThenReset();
+        }
+
+        snapshot.latencyTotal_ns = latencyTotal_ns.sumThenReset();
+
+        synchronized (total) {
+            total.add(snapshot);
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Returns the values over the whole run, including the current iteration.
+     */
+    public Snapshot getTotal() {
+        Snapshot result = new Snapshot();
+
+        synchronized (total) {
+            result.add(total);
+        }
+
+        for (int i = 0; i < counters.length; i++) {
+            result.counts[i] += counters[i].sum();
+        }
+
+        for (int i = 0; i < latencyBuckets.length; i++) {
+            result.latencyBuckets[i] += latencyBuckets[i].sum();
+        }
+
+        result.latencyTotal_ns += latencyTotal_ns.sum();
+
+        return result;
+    }
+
+    /**
+     * Log statistics about service area checks, routing filter effectiveness and
+     * PT+DRT trips.
+     */
+    public void logStatistics() {
+        Snapshot snapshot = getTotal();
+
+        long inside = snapshot.get(Counter.SERVICE_AREA_INSIDE);
+        long outside = snapshot.get(Counter.SERVICE_AREA_OUTSIDE);
+        long checks = inside + outside;
+
+        log.info("=== DrtServiceAreaFilter Statistics ===");
+        log.info("  Total checks: {}", checks);
+        log.info("  Inside service area: {} ({}%)", inside,
+                checks > 0 ? String.format("%.1f", 100.0 * inside / checks) : "0.0");
+        log.info("  Outside service area: {} ({}%)", outside,
+                checks > 0 ? String.format("%.1f", 100.0 * outside / checks) : "0.0");
+        log.info("  Answered from precomputed membership: {}", snapshot.get(Counter.SERVICE_AREA_PRECOMPUTED));
+
+        long attempts = snapshot.get(Counter.ROUTING_ATTEMPTS);
+        long filtered = snapshot.get(Counter.ROUTING_FILTERED);
+
+        log.info("=== FilteredDrtIntermodalRoutingModule Statistics ===");
+        log.info("  Total DRT routing attempts: {}", attempts);
+        log.info("  Routing ALLOWED (at least one endpoint in area): {}", snapshot.get(Counter.ROUTING_ALLOWED));
+        log.info("    - Both endpoints inside: {}", snapshot.get(Counter.ROUTING_BOTH_INSIDE));
+        log.info("    - Only FROM inside (access leg): {}", snapshot.get(Counter.ROUTING_FROM_INSIDE_ONLY));
+        log.info("    - Only TO inside (egress leg): {}", snapshot.get(Counter.ROUTING_TO_INSIDE_ONLY));
+        log.info("  Routing FILTERED (neither endpoint in area): {}", filtered);
+        log.info("  Computation saved: {}%",
+                attempts > 0 ? String.format("%.1f", 100.0 * filtered / attempts) : "0.0");
+        log.info("  Delegate calls: {}, mean {} ms, p99 <= {} ms", snapshot.getDelegateCalls(),
+                String.format("%.3f", snapshot.getMeanDelegateLatency_ms()),
+                String.format("%.3f", snapshot.getDelegateLatencyQuantile_ms(0.99)));
+
+        long processed = snapshot.get(Counter.PT_TRIPS_PROCESSED);
+        long withDrt = snapshot.get(Counter.PT_TRIPS_WITH_DRT);
+
+        log.info("=== AstraPtPredictor DRT Statistics ===");
+        log.info("  Total PT trips processed: {}", processed);
+        log.info("  PT trips with DRT access/egress: {} ({}%)", withDrt,
+                processed > 0 ? String.format("%.1f", 100.0 * withDrt / processed) : "0.0");
+        log.info("  PT+DRT trips with origin/dest in service area: {}",
+                snapshot.get(Counter.PT_TRIPS_WITH_DRT_IN_SERVICE_AREA));
+        log.info("  PT+DRT trips with origin/dest outside service area: {}",
+                snapshot.get(Counter.PT_TRIPS_WITH_DRT_OUTSIDE_SERVICE_AREA));
+    }
+}
@@ -0,0 +1,77 @@
+package abmt2025.project.mode_choice.routing;
+
+import com.google.inject.Inject;
+
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Writes the {@link DrtFilterMetrics} of every iteration to drt_filter_stats.csv
+ * in the output directory, one row per iteration.
+ */
+public class DrtFilterMetricsWriter implements IterationEndsListener {
+
+    private static final Logger log = LogManager.getLogger(DrtFilterMetricsWriter.class);
+
+    public static final String FILE_NAME = "drt_filter_stats.csv";
+
+    private final DrtFilterMetrics metrics;
+    private final OutputDirectoryHierarchy outputHierarchy;
+
+    private boolean headerWritten = false;
+
+    @Inject
+    public DrtFilterMetricsWriter(DrtFilterMetrics metrics, OutputDirectoryHierarchy outputHierarchy) {
+        this.metrics = metrics;
+        this.outputHierarchy = outputHierarchy;
+    }
+
+    @Override
+    public void notifyIterationEnds(IterationEndsEvent event) {
+        DrtFilterMetrics.Snapshot snapshot = metrics.snapshot();
+        File outputFile = new File(outputHierarchy.getOutputFilename(FILE_NAME));
+
+        // The first row of a run truncates whatever a previous run left behind
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile, headerWritten))) {
+            if (!headerWritten) {
+                writer.write("iteration");
+
+                for (DrtFilterMetrics.Counter counter : DrtFilterMetrics.Counter.values()) {
+                    writer.write(";" + counter.getColumnName());
+                }
+
+                writer.write(";delegateCalls;delegateMean_ms;delegateP50_ms;delegateP90_ms;delegateP99_ms\n");
+                headerWritten = true;
+            }
+
+            writer.write(String.valueOf(event.getIteration()));
+
+            for (DrtFilterMetrics.Counter counter : DrtFilterMetrics.Counter.values()) {
+                writer.write(";" + snapshot.get(counter));
+            }
+
+            writer.write(String.format(Locale.US, ";%d;%.4f;%.4f;%.4f;%.4f\n", snapshot.getDelegateCalls(),
+                    snapshot.getMeanDelegateLatency_ms(), snapshot.getDelegateLatencyQuantile_ms(0.5),
+                    snapshot.getDelegateLatencyQuantile_ms(0.9), snapshot.getDelegateLatencyQuantile_ms(0.99)));
+        } catch (IOException e) {
+            log.error("Error writing DRT filter statistics: ", e);
+        }
+
+        long attempts = snapshot.get(DrtFilterMetrics.Counter.ROUTING_ATTEMPTS);
+        long filtered = snapshot.get(DrtFilterMetrics.Counter.ROUTING_FILTERED);
+
+        log.info("FilteredDrtIntermodalRoutingModule in iteration {}: {} attempts, {} allowed, {} filtered ({}% saved)",
+                event.getIteration(), attempts, snapshot.get(DrtFilterMetrics.Counter.ROUTING_ALLOWED), filtered,
+                attempts > 0 ? String.format("%.1f", 100.0 * filtered / attempts) : "0.0");
+    }
+}
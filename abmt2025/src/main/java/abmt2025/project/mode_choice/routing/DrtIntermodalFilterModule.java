@@ -9,6 +9,7 @@ import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import com.google.inject.name.Names;
 
+import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.contrib.drt.run.DrtConfigGroup;
 import org.matsim.contrib.drt.run.MultiModeDrtConfigGroup;
@@ -18,7 +19,7 @@ import org.matsim.core.controler.events.ShutdownEvent;
 import org.matsim.core.controler.listener.ShutdownListener;
 import org.matsim.core.router.RoutingModule;
 
-import abmt2025.project.mode_choice.predictors.AstraPtPredictor;
+import abmt2025.project.config.AstraConfigGroup;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -30,7 +31,7 @@ import org.apache.logging.log4j.Logger;
  * 1. Loads the DRT service area shape file from the DRT config
  * 2. Creates a DrtServiceAreaFilter singleton
  * 3. Binds a "drt_access" routing module for intermodal PT access/egress
- * 4. Logs statistics at simulation shutdown
+ * 4. Writes the filter metrics per iteration and logs totals at simulation shutdown
  *
  * IMPORTANT: To activate filtering, configure SwissRailRaptor to use mode "drt_access"
  * instead of "drt" for intermodal access/egress.
@@ -50,6 +51,14 @@ public class DrtIntermodalFilterModule extends AbstractModule {
         // Add shutdown listener to log statistics
         addControlerListenerBinding().to(DrtFilterShutdownListener.class);
 
+        // Write service area check counts and filter metrics per iteration
+        addControlerListenerBinding().to(DrtFilterMetricsWriter.class);
+
+        // Clear the route cache between iterations and report its hit rate
+        if (AstraConfigGroup.get(getConfig()).getDrtRouteCacheSize() > 0) {
+            addControlerListenerBinding().to(DrtRouteCache.class);
+        }
+
         // Bind the filtered DRT routing module to a new mode "drt_access"
         // SwissRailRaptor should be configured to use this mode for intermodal access/egress
         addRoutingModuleBinding(DRT_ACCESS_MODE).toProvider(FilteredDrtRoutingModuleProvider.class);
@@ -66,11 +75,15 @@ public class DrtIntermodalFilterModule extends AbstractModule {
     public static class FilteredDrtRoutingModuleProvider implements Provider<RoutingModule> {
 
         private final Injector injector;
+        private final Config config;
+        private final DrtFilterMetrics metrics;
         private DrtServiceAreaFilter filter;
 
         @Inject
-        public FilteredDrtRoutingModuleProvider(Injector injector) {
+        public FilteredDrtRoutingModuleProvider(Injector injector, Config config, DrtFilterMetrics metrics) {
             this.injector = injector;
+            this.config = config;
+            this.metrics = metrics;
         }
 
         @Inject(optional = true)
@@ -95,7 +108,7 @@ public class DrtIntermodalFilterModule extends AbstractModule {
 
             if (originalDrtRouter == null) {
                 log.warn("No DRT routing module found - drt_access will return null routes");
-                return new FilteredDrtIntermodalRoutingModule(null, filter);
+                return new FilteredDrtIntermodalRoutingModule(null, filter, metrics);
             }
 
             if (filter != null && filter.isInitialized()) {
@@ -106,14 +119,21 @@ public class DrtIntermodalFilterModule extends AbstractModule {
                         originalDrtRouter.getClass().getSimpleName());
             }
 
-            return new FilteredDrtIntermodalRoutingModule(originalDrtRouter, filter);
+            DrtRouteCache routeCache = null;
+
+            if (AstraConfigGroup.get(config).getDrtRouteCacheSize() > 0) {
+                routeCache = injector.getInstance(DrtRouteCache.class);
+            }
+
+            return new FilteredDrtIntermodalRoutingModule(originalDrtRouter, filter, metrics, routeCache);
         }
     }
 
     @Provides
     @Singleton
     @Named("drtServiceAreaFilter")
-    public DrtServiceAreaFilter provideDrtServiceAreaFilter(Config config) {
+    public DrtServiceAreaFilter provideDrtServiceAreaFilter(Config config, Scenario scenario,
+            DrtFilterMetrics metrics) {
         // Get the DRT service area shape file path from config
         MultiModeDrtConfigGroup multiModeDrtConfig = MultiModeDrtConfigGroup.get(config);
 
@@ -138,7 +158,23 @@ public class DrtIntermodalFilterModule extends AbstractModule {
             return null;
         }
 
-        return new DrtServiceAreaFilter(shapeFilePath);
+        AstraConfigGroup astraConfig = AstraConfigGroup.get(config);
+        DrtServiceAreaFilter filter = new DrtServiceAreaFilter(shapeFilePath, astraConfig.getDrtServiceAreaBackend(),
+                metrics);
+
+        if (astraConfig.getPrecomputeDrtServiceAreaMembership()) {
+            filter.precomputeMembership(scenario.getNetwork(), scenario.getActivityFacilities(),
+                    scenario.getTransitSchedule());
+        }
+
+        return filter;
+    }
+
+    @Provides
+    @Singleton
+    public DrtRouteCache provideDrtRouteCache(Config config) {
+        AstraConfigGroup astraConfig = AstraConfigGroup.get(config);
+        return new DrtRouteCache(astraConfig.getDrtRouteCacheSize(), astraConfig.getDrtRouteCacheTimeBin());
     }
 
     /**
@@ -146,30 +182,17 @@ public class DrtIntermodalFilterModule extends AbstractModule {
      */
     public static class DrtFilterShutdownListener implements ShutdownListener {
 
-        private DrtServiceAreaFilter filter;
+        private final DrtFilterMetrics metrics;
 
         @com.google.inject.Inject
-        public DrtFilterShutdownListener() {
-            // Default constructor - filter will be set via setter if available
-        }
-
-        @com.google.inject.Inject(optional = true)
-        public void setFilter(@Named("drtServiceAreaFilter") DrtServiceAreaFilter filter) {
-            this.filter = filter;
+        public DrtFilterShutdownListener(DrtFilterMetrics metrics) {
+            this.metrics = metrics;
         }
 
         @Override
         public void notifyShutdown(ShutdownEvent event) {
-            // Log service area filter statistics
-            if (filter != null) {
-                filter.logStatistics();
-            }
-
-            // Log FilteredDrtIntermodalRoutingModule statistics
-            FilteredDrtIntermodalRoutingModule.logStatistics();
-
-            // Log AstraPtPredictor DRT statistics
-            AstraPtPredictor.logStatistics();
+            // Log DrtServiceAreaFilter, FilteredDrtIntermodalRoutingModule and AstraPtPredictor statistics
+            metrics.logStatistics();
         }
     }
 }
@@ -0,0 +1,222 @@
+package abmt2025.project.mode_choice.routing;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.router.RoutingRequest;
+import org.matsim.facilities.Facility;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of DRT access/egress routes, shared by all routing threads.
+ *
+ * SwissRailRaptor asks for the same access and egress legs many times while
+ * routing one trip (for instance home to every candidate stop). Routes are
+ * cached by origin and destination (link and coordinate) and by the bin of the
+ * departure time. A cached route is returned as a copy, shifted to the
+ * requested departure time.
+ *
+ * The DVRP travel time and the DRT waiting time estimates change between
+ * iterations, so the cache is cleared at the start of each iteration.
+ * Eviction is least-recently-used within each of the stripes of the cache.
+ */
+public class DrtRouteCache implements IterationStartsListener, IterationEndsListener {
+
+    private static final Logger log = LogManager.getLogger(DrtRouteCache.class);
+
+    private static final int NUMBER_OF_STRIPES = 16;
+
+    // Marks requests for which the delegate did not find a route
+    private static final Entry NO_ROUTE = new Entry(0.0, null);
+
+    private final double timeBinSize;
+    private final List<Map<Key, Entry>> stripes = new ArrayList<>(NUMBER_OF_STRIPES);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public DrtRouteCache(int maximumSize, double timeBinSize) {
+        this.timeBinSize = timeBinSize;
+
+        int stripeSize = Math.max(1, maximumSize / NUMBER_OF_STRIPES);
+
+        for (int i = 0; i < NUMBER_OF_STRIPES; i++) {
+            stripes.add(new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                    if (size() > stripeSize) {
+                        evictions.increment();
+                        return true;
+                    }
+
+                    return false;
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the cached route for the request, or computes it with the given
+     * router and caches it. Concurrent misses on the same key may both run the
+     * router, the later result wins.
+     */
+    public List<? extends PlanElement> getRoute(RoutingRequest request,
+            Supplier<List<? extends PlanElement>> router) {
+        double departureTime = request.getDepartureTime();
+        Key key = new Key(request.getFromFacility(), request.getToFacility(),
+                (int) Math.floor(departureTime / timeBinSize));
+
+        Map<Key, Entry> stripe = stripes.get(Math.floorMod(key.hashCode(), NUMBER_OF_STRIPES));
+        Entry entry;
+
+        synchronized (stripe) {
+            entry = stripe.get(key);
+        }
+
+        if (entry != null) {
+            hits.increment();
+            return entry == NO_ROUTE ? null : copyRoute(entry.route, departureTime - entry.departureTime);
+        }
+
+        misses.increment();
+        List<? extends PlanElement> route = router.get();
+
+        // The cache keeps its own copy, the caller may modify the returned elements
+        entry = route == null ? NO_ROUTE : new Entry(departureTime, copyRoute(route, 0.0));
+
+        synchronized (stripe) {
+            stripe.put(key, entry);
+        }
+
+        return route;
+    }
+
+    private static List<PlanElement> copyRoute(List<? extends PlanElement> route, double offset) {
+        List<PlanElement> copy = new ArrayList<>(route.size());
+
+        for (PlanElement element : route) {
+            if (element instanceof Leg) {
+                Leg leg = (Leg) element;
+                Leg legCopy = PopulationUtils.createLeg(leg.getMode());
+                PopulationUtils.copyFromTo(leg, legCopy);
+                leg.getDepartureTime().ifDefined(time -> legCopy.setDepartureTime(time + offset));
+                copy.add(legCopy);
+            } else if (element instanceof Activity) {
+                Activity activity = (Activity) element;
+                Activity activityCopy = PopulationUtils.createActivity(activity);
+                activity.getStartTime().ifDefined(time -> activityCopy.setStartTime(time + offset));
+                activity.getEndTime().ifDefined(time -> activityCopy.setEndTime(time + offset));
+                copy.add(activityCopy);
+            } else {
+                throw new IllegalStateException("Cannot copy plan element " + element.getClass());
+            }
+        }
+
+        return copy;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long total = getHits() + getMisses();
+        return total > 0 ? (double) getHits() / total : 0.0;
+    }
+
+    /**
+     * Removes all cached routes. The hit and miss counters are not reset.
+     */
+    public void clear() {
+        for (Map<Key, Entry> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    @Override
+    public void notifyIterationStarts(IterationStartsEvent event) {
+        clear();
+    }
+
+    @Override
+    public void notifyIterationEnds(IterationEndsEvent event) {
+        long hitCount = hits.sumThenReset();
+        long missCount = misses.sumThenReset();
+        long evictionCount = evictions.sumThenReset();
+        long total = hitCount + missCount;
+
+        log.info("DRT route cache in iteration {}: {} requests, {} hits ({}%), {} evictions",
+                event.getIteration(), total, hitCount,
+                total > 0 ? String.format("%.1f", 100.0 * hitCount / total) : "0.0", evictionCount);
+    }
+
+    private static class Entry {
+        final double departureTime;
+        final List<PlanElement> route;
+
+        Entry(double departureTime, List<PlanElement> route) {
+            this.departureTime = departureTime;
+            this.route = route;
+        }
+    }
+
+    private static final class Key {
+        private final Id<Link> fromLinkId;
+        private final Id<Link> toLinkId;
+        private final Coord fromCoord;
+        private final Coord toCoord;
+        private final int timeBin;
+        private final int hash;
+
+        Key(Facility from, Facility to, int timeBin) {
+            this.fromLinkId = from.getLinkId();
+            this.toLinkId = to.getLinkId();
+            this.fromCoord = from.getCoord();
+            this.toCoord = to.getCoord();
+            this.timeBin = timeBin;
+            this.hash = Objects.hash(fromLinkId, toLinkId, fromCoord, toCoord, timeBin);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) other;
+            return timeBin == key.timeBin && Objects.equals(fromLinkId, key.fromLinkId)
+                    && Objects.equals(toLinkId, key.toLinkId) && Objects.equals(fromCoord, key.fromCoord)
+                    && Objects.equals(toCoord, key.toCoord);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
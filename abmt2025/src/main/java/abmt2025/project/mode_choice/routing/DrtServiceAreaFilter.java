@@ -3,19 +3,48 @@ package abmt2025.project.mode_choice.routing;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.feature.FeatureIterator;
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Location;
 import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.matsim.api.core.v01.BasicLocation;
 import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Identifiable;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
 import org.matsim.core.utils.geometry.geotools.MGC;
 import org.matsim.core.utils.gis.ShapeFileReader;
+import org.matsim.facilities.ActivityFacilities;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.facilities.Facility;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 import org.opengis.feature.simple.SimpleFeature;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import abmt2025.project.config.AstraConfigGroup.DrtServiceAreaBackend;
+import abmt2025.project.mode_choice.routing.DrtFilterMetrics.Counter;
+
 /**
  * Utility class to check if coordinates are within the DRT service area.
  * Loads a shape file and provides methods to test if a point is inside.
+ *
+ * Points outside the envelope of the service area are rejected right away.
+ * The remaining ones are tested by one of the {@link DrtServiceAreaBackend}s,
+ * which all give the same answer as {@link Geometry#contains} on the unioned
+ * service area: points on the boundary are outside.
  */
 public class DrtServiceAreaFilter {
 
@@ -23,25 +52,149 @@ public class DrtServiceAreaFilter {
 
     private final Geometry serviceArea;
     private final String shapeFilePath;
+    private final DrtServiceAreaBackend backend;
+
+    private final Envelope envelope;
+    private final IndexedPointInAreaLocator serviceAreaLocator;
+    private final STRtree featureIndex;
 
-    // Statistics for logging
-    private long checksPerformed = 0;
-    private long checksInside = 0;
-    private long checksOutside = 0;
+    // Precomputed membership by Id.index(), see precomputeMembership
+    private Network network;
+    private Membership linkMembership;
+    private Membership facilityMembership;
+    private Membership stopMembership;
+
+    private static final int UNKNOWN = -1;
+
+    // Statistics (shared by all routing threads of the controller)
+    private final DrtFilterMetrics metrics;
 
     public DrtServiceAreaFilter(String shapeFilePath) {
+        this(shapeFilePath, DrtServiceAreaBackend.PREPARED, new DrtFilterMetrics());
+    }
+
+    public DrtServiceAreaFilter(String shapeFilePath, DrtServiceAreaBackend backend, DrtFilterMetrics metrics) {
         this.shapeFilePath = shapeFilePath;
-        this.serviceArea = loadServiceArea(shapeFilePath);
+        this.backend = backend;
+        this.metrics = metrics;
+
+        List<Geometry> featureGeometries = new ArrayList<>();
+        this.serviceArea = loadServiceArea(shapeFilePath, featureGeometries);
 
         if (serviceArea != null) {
+            this.envelope = serviceArea.getEnvelopeInternal();
+            this.serviceAreaLocator = backend == DrtServiceAreaBackend.PLAIN ? null : createLocator(serviceArea);
+            this.featureIndex = backend == DrtServiceAreaBackend.STRTREE ? createFeatureIndex(featureGeometries) : null;
+
             log.info("DRT service area filter initialized from: {}", shapeFilePath);
-            log.info("Service area bounds: {}", serviceArea.getEnvelopeInternal());
+            log.info("Service area bounds: {}", envelope);
+            log.info("Service area lookup backend: {}", backend);
         } else {
+            this.envelope = null;
+            this.serviceAreaLocator = null;
+            this.featureIndex = null;
+
             log.warn("DRT service area filter could not load shape file: {}", shapeFilePath);
         }
     }
 
-    private Geometry loadServiceArea(String shapeFilePath) {
+    private static IndexedPointInAreaLocator createLocator(Geometry geometry) {
+        IndexedPointInAreaLocator locator = new IndexedPointInAreaLocator(geometry);
+
+        // The locator builds its index lazily, do it now so that lookups are read-only
+        locator.locate(geometry.getEnvelopeInternal().centre());
+
+        return locator;
+    }
+
+    private static STRtree createFeatureIndex(List<Geometry> features) {
+        STRtree index = new STRtree();
+
+        for (Geometry feature : features) {
+            index.insert(feature.getEnvelopeInternal(), createLocator(feature));
+        }
+
+        index.build();
+        log.info("Built STRtree over {} service area features", features.size());
+
+        return index;
+    }
+
+    /**
+     * Tests all links, activity facilities and transit stops against the service
+     * area once, so that {@link #isInsideServiceArea(Facility)} can answer by id
+     * for these objects. Must be called before the filter is shared.
+     */
+    public void precomputeMembership(Network network, ActivityFacilities facilities, TransitSchedule schedule) {
+        if (serviceArea == null) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+
+        this.network = network;
+        this.linkMembership = computeMembership(Link.class, network.getLinks().values());
+        this.facilityMembership = computeMembership(ActivityFacility.class, facilities.getFacilities().values());
+        this.stopMembership = computeMembership(TransitStopFacility.class, schedule.getFacilities().values());
+
+        log.info("Precomputed service area membership in {} ms: {} of {} links, {} of {} facilities, {} of {} stops",
+                System.currentTimeMillis() - startTime,
+                linkMembership.inside.cardinality(), network.getLinks().size(),
+                facilityMembership.inside.cardinality(), facilities.getFacilities().size(),
+                stopMembership.inside.cardinality(), schedule.getFacilities().size());
+    }
+
+    private <T extends Identifiable<T> & BasicLocation> Membership computeMembership(Class<T> type,
+            Collection<? extends T> items) {
+        List<T> list = new ArrayList<>(items);
+        int numberOfIds = Id.getNumberOfIds(type);
+
+        // Each index is written by exactly one task, so a plain array is safe here
+        boolean[] inside = new boolean[numberOfIds];
+        boolean[] known = new boolean[numberOfIds];
+
+        IntStream.range(0, list.size()).parallel().forEach(i -> {
+            T item = list.get(i);
+            Coord coord = item.getCoord();
+
+            if (coord != null) {
+                int index = item.getId().index();
+                inside[index] = contains(coord);
+                known[index] = true;
+            }
+        });
+
+        Membership membership = new Membership(numberOfIds);
+
+        for (int index = 0; index < numberOfIds; index++) {
+            if (known[index]) {
+                membership.known.set(index);
+            }
+
+            if (inside[index]) {
+                membership.inside.set(index);
+            }
+        }
+
+        return membership;
+    }
+
+    private static class Membership {
+        final BitSet known;
+        final BitSet inside;
+
+        Membership(int numberOfIds) {
+            this.known = new BitSet(numberOfIds);
+            this.inside = new BitSet(numberOfIds);
+        }
+
+        int lookup(Id<?> id) {
+            int index = id.index();
+            return known.get(index) ? (inside.get(index) ? 1 : 0) : UNKNOWN;
+        }
+    }
+
+    private Geometry loadServiceArea(String shapeFilePath, List<Geometry> featureGeometries) {
         Geometry mergedGeometry = null;
 
         try {
@@ -53,6 +206,8 @@ public class DrtServiceAreaFilter {
                     SimpleFeature feature = features.next();
                     Geometry geometry = (Geometry) feature.getDefaultGeometry();
                     if (geometry != null) {
+                        featureGeometries.add(geometry);
+
                         if (mergedGeometry == null) {
                             mergedGeometry = geometry;
                         } else {
@@ -84,20 +239,99 @@ public class DrtServiceAreaFilter {
             return false;
         }
 
-        checksPerformed++;
+        return recordCheck(contains(coord));
+    }
+
+    /**
+     * Check if a facility is inside the DRT service area. Links, activity
+     * facilities and transit stops are answered from the precomputed membership
+     * if available, anything else falls back to the coordinate check.
+     *
+     * @param facility The facility to check
+     * @return true if inside the service area, false otherwise
+     */
+    public boolean isInsideServiceArea(Facility facility) {
+        if (serviceArea == null || facility == null) {
+            return false;
+        }
 
-        Point point = MGC.coord2Point(coord);
-        boolean inside = serviceArea.contains(point);
+        int precomputed = lookupMembership(facility);
 
-        if (inside) {
-            checksInside++;
-        } else {
-            checksOutside++;
+        if (precomputed == UNKNOWN) {
+            return isInsideServiceArea(facility.getCoord());
+        }
+
+        metrics.increment(Counter.SERVICE_AREA_PRECOMPUTED);
+        return recordCheck(precomputed == 1);
+    }
+
+    private int lookupMembership(Facility facility) {
+        if (linkMembership == null) {
+            return UNKNOWN;
+        }
+
+        if (facility instanceof TransitStopFacility) {
+            return stopMembership.lookup(((TransitStopFacility) facility).getId());
+        }
+
+        if (facility instanceof ActivityFacility) {
+            return facilityMembership.lookup(((ActivityFacility) facility).getId());
+        }
+
+        // Link-based facilities only count if they are located at the link coordinate
+        Coord coord = facility.getCoord();
+
+        if (facility.getLinkId() != null && coord != null) {
+            Link link = network.getLinks().get(facility.getLinkId());
+
+            if (link != null && coord.equals(link.getCoord())) {
+                return linkMembership.lookup(link.getId());
+            }
         }
 
+        return UNKNOWN;
+    }
+
+    private boolean recordCheck(boolean inside) {
+        metrics.increment(inside ? Counter.SERVICE_AREA_INSIDE : Counter.SERVICE_AREA_OUTSIDE);
         return inside;
     }
 
+    private boolean contains(Coord coord) {
+        if (!envelope.contains(coord.getX(), coord.getY())) {
+            return false;
+        }
+
+        switch (backend) {
+        case PLAIN:
+            Point point = MGC.coord2Point(coord);
+            return serviceArea.contains(point);
+        case PREPARED:
+            return serviceAreaLocator.locate(new Coordinate(coord.getX(), coord.getY())) == Location.INTERIOR;
+        case STRTREE:
+            return containsIndexed(new Coordinate(coord.getX(), coord.getY()));
+        default:
+            throw new IllegalStateException("Unknown backend: " + backend);
+        }
+    }
+
+    private boolean containsIndexed(Coordinate coordinate) {
+        boolean onFeatureBoundary = false;
+
+        for (Object item : featureIndex.query(new Envelope(coordinate))) {
+            int location = ((IndexedPointInAreaLocator) item).locate(coordinate);
+
+            if (location == Location.INTERIOR) {
+                return true;
+            } else if (location == Location.BOUNDARY) {
+                onFeatureBoundary = true;
+            }
+        }
+
+        // A point on the border between two adjacent features lies inside the union
+        return onFeatureBoundary && serviceAreaLocator.locate(coordinate) == Location.INTERIOR;
+    }
+
     /**
      * Check if either of two coordinates is inside the DRT service area.
      * This is useful for intermodal trips where DRT can be used if
@@ -111,27 +345,6 @@ public class DrtServiceAreaFilter {
         return isInsideServiceArea(origin) || isInsideServiceArea(destination);
     }
 
-    /**
-     * Log statistics about service area checks.
-     */
-    public void logStatistics() {
-        log.info("DRT Service Area Filter Statistics:");
-        log.info("  Total checks: {}", checksPerformed);
-        log.info("  Inside service area: {} ({}%)", checksInside,
-                checksPerformed > 0 ? String.format("%.1f", 100.0 * checksInside / checksPerformed) : "0.0");
-        log.info("  Outside service area: {} ({}%)", checksOutside,
-                checksPerformed > 0 ? String.format("%.1f", 100.0 * checksOutside / checksPerformed) : "0.0");
-    }
-
-    /**
-     * Reset statistics counters.
-     */
-    public void resetStatistics() {
-        checksPerformed = 0;
-        checksInside = 0;
-        checksOutside = 0;
-    }
-
     public boolean isInitialized() {
         return serviceArea != null;
     }
@@ -139,4 +352,8 @@ public class DrtServiceAreaFilter {
     public String getShapeFilePath() {
         return shapeFilePath;
     }
+
+    public DrtServiceAreaBackend getBackend() {
+        return backend;
+    }
 }
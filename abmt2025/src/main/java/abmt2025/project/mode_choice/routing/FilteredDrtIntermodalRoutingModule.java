@@ -12,7 +12,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
+
+import abmt2025.project.mode_choice.routing.DrtFilterMetrics.Counter;
 
 /**
  * A routing module wrapper that filters DRT routing based on a service area.
@@ -30,21 +31,26 @@ public class FilteredDrtIntermodalRoutingModule implements RoutingModule {
 
     private final RoutingModule delegate;
     private final DrtServiceAreaFilter serviceAreaFilter;
+    private final DrtRouteCache routeCache;
+
+    // Statistics (shared by all routing threads of the controller)
+    private final DrtFilterMetrics metrics;
 
-    // Statistics (thread-safe)
-    private static final AtomicLong routingAttempts = new AtomicLong(0);
-    private static final AtomicLong routingAllowed = new AtomicLong(0);
-    private static final AtomicLong routingFiltered = new AtomicLong(0);
-    private static final AtomicLong routingFromInsideOnly = new AtomicLong(0);
-    private static final AtomicLong routingToInsideOnly = new AtomicLong(0);
-    private static final AtomicLong routingBothInside = new AtomicLong(0);
+    public FilteredDrtIntermodalRoutingModule(RoutingModule delegate, DrtServiceAreaFilter serviceAreaFilter,
+            DrtFilterMetrics metrics) {
+        this(delegate, serviceAreaFilter, metrics, null);
+    }
 
-    public FilteredDrtIntermodalRoutingModule(RoutingModule delegate, DrtServiceAreaFilter serviceAreaFilter) {
+    public FilteredDrtIntermodalRoutingModule(RoutingModule delegate, DrtServiceAreaFilter serviceAreaFilter,
+            DrtFilterMetrics metrics, DrtRouteCache routeCache) {
         this.delegate = delegate;
         this.serviceAreaFilter = serviceAreaFilter;
+        this.metrics = metrics;
+        this.routeCache = routeCache;
         log.info("FilteredDrtIntermodalRoutingModule initialized");
         log.info("  Delegate available: {}", delegate != null);
         log.info("  Filter active: {}", serviceAreaFilter != null && serviceAreaFilter.isInitialized());
+        log.info("  Route cache active: {}", routeCache != null);
     }
 
     @Override
@@ -55,19 +61,12 @@ public class FilteredDrtIntermodalRoutingModule implements RoutingModule {
             return null;
         }
 
-        long attempts = routingAttempts.incrementAndGet();
-
-        // Periodic logging every 5000 attempts
-        if (attempts % 5000 == 0) {
-            log.info("FilteredDrtIntermodalRoutingModule: {} attempts, {} allowed, {} filtered ({}% saved)",
-                    attempts, routingAllowed.get(), routingFiltered.get(),
-                    attempts > 0 ? String.format("%.1f", 100.0 * routingFiltered.get() / attempts) : "0.0");
-        }
+        metrics.increment(Counter.ROUTING_ATTEMPTS);
 
         // If no filter, just delegate
         if (serviceAreaFilter == null || !serviceAreaFilter.isInitialized()) {
-            routingAllowed.incrementAndGet();
-            return delegate.calcRoute(request);
+            metrics.increment(Counter.ROUTING_ALLOWED);
+            return routeWithDelegate(request);
         }
 
         Facility fromFacility = request.getFromFacility();
@@ -77,12 +76,12 @@ public class FilteredDrtIntermodalRoutingModule implements RoutingModule {
         Coord toCoord = toFacility.getCoord();
 
         // Check if either the origin or destination is in the DRT service area
-        boolean fromInside = serviceAreaFilter.isInsideServiceArea(fromCoord);
-        boolean toInside = serviceAreaFilter.isInsideServiceArea(toCoord);
+        boolean fromInside = serviceAreaFilter.isInsideServiceArea(fromFacility);
+        boolean toInside = serviceAreaFilter.isInsideServiceArea(toFacility);
 
         if (!fromInside && !toInside) {
             // Neither endpoint is in the service area - skip DRT routing
-            routingFiltered.incrementAndGet();
+            metrics.increment(Counter.ROUTING_FILTERED);
 
             if (log.isDebugEnabled()) {
                 log.debug("DRT routing FILTERED: neither endpoint in service area. " +
@@ -95,15 +94,15 @@ public class FilteredDrtIntermodalRoutingModule implements RoutingModule {
         }
 
         // At least one endpoint is in the service area - proceed with DRT routing
-        routingAllowed.incrementAndGet();
+        metrics.increment(Counter.ROUTING_ALLOWED);
 
         // Track which endpoint(s) are inside
         if (fromInside && toInside) {
-            routingBothInside.incrementAndGet();
+            metrics.increment(Counter.ROUTING_BOTH_INSIDE);
         } else if (fromInside) {
-            routingFromInsideOnly.incrementAndGet();
+            metrics.increment(Counter.ROUTING_FROM_INSIDE_ONLY);
         } else {
-            routingToInsideOnly.incrementAndGet();
+            metrics.increment(Counter.ROUTING_TO_INSIDE_ONLY);
         }
 
         if (log.isDebugEnabled()) {
@@ -114,34 +113,21 @@ public class FilteredDrtIntermodalRoutingModule implements RoutingModule {
                     toCoord.getX(), toCoord.getY());
         }
 
-        return delegate.calcRoute(request);
+        return routeWithDelegate(request);
     }
 
-    /**
-     * Log statistics about routing filter effectiveness.
-     */
-    public static void logStatistics() {
-        long attempts = routingAttempts.get();
-        long allowed = routingAllowed.get();
-        long filtered = routingFiltered.get();
-
-        log.info("=== FilteredDrtIntermodalRoutingModule Statistics ===");
-        log.info("  Total DRT routing attempts: {}", attempts);
-        log.info("  Routing ALLOWED (at least one endpoint in area): {}", allowed);
-        log.info("    - Both endpoints inside: {}", routingBothInside.get());
-        log.info("    - Only FROM inside (access leg): {}", routingFromInsideOnly.get());
-        log.info("    - Only TO inside (egress leg): {}", routingToInsideOnly.get());
-        log.info("  Routing FILTERED (neither endpoint in area): {}", filtered);
-        log.info("  Computation saved: {}%",
-                attempts > 0 ? String.format("%.1f", 100.0 * filtered / attempts) : "0.0");
+    private List<? extends PlanElement> routeWithDelegate(RoutingRequest request) {
+        if (routeCache == null) {
+            return timedDelegateCall(request);
+        }
+
+        return routeCache.getRoute(request, () -> timedDelegateCall(request));
     }
 
-    public static void resetStatistics() {
-        routingAttempts.set(0);
-        routingAllowed.set(0);
-        routingFiltered.set(0);
-        routingFromInsideOnly.set(0);
-        routingToInsideOnly.set(0);
-        routingBothInside.set(0);
+    private List<? extends PlanElement> timedDelegateCall(RoutingRequest request) {
+        long startTime = System.nanoTime();
+        List<? extends PlanElement> route = delegate.calcRoute(request);
+        metrics.recordDelegateCall(System.nanoTime() - startTime);
+        return route;
     }
 }
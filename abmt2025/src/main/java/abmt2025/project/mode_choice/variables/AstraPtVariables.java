@@ -5,7 +5,9 @@ import org.eqasim.switzerland.ovgk.OVGK;
 
 public class AstraPtVariables extends PtVariables {
 	public final double railTravelTime_min;
-	public final double busTravelTime_min;
+	public final double busTravelTime_min; // All non-rail vehicles, including tram and boat
+	public final double tramTravelTime_min;
+	public final double boatTravelTime_min;
 	public final double headway_min;
 	public final OVGK ovgk;
 
@@ -21,11 +23,20 @@ public class AstraPtVariables extends PtVariables {
 
 	public AstraPtVariables(PtVariables delegate, double railTravelTime_min, double busTravelTime_min,
 			double headway_min, OVGK ovgk, double drtAccessEgressTime_min, double drtWaitingTime_min, boolean hasDrtAccess) {
+		this(delegate, railTravelTime_min, busTravelTime_min, 0.0, 0.0, headway_min, ovgk, drtAccessEgressTime_min,
+				drtWaitingTime_min, hasDrtAccess);
+	}
+
+	public AstraPtVariables(PtVariables delegate, double railTravelTime_min, double busTravelTime_min,
+			double tramTravelTime_min, double boatTravelTime_min, double headway_min, OVGK ovgk,
+			double drtAccessEgressTime_min, double drtWaitingTime_min, boolean hasDrtAccess) {
 		super(delegate.inVehicleTime_min, delegate.waitingTime_min, delegate.accessEgressTime_min,
 				delegate.numberOfLineSwitches, delegate.cost_MU, delegate.euclideanDistance_km);
 
 		this.busTravelTime_min = busTravelTime_min;
 		this.railTravelTime_min = railTravelTime_min;
+		this.tramTravelTime_min = tramTravelTime_min;
+		this.boatTravelTime_min = boatTravelTime_min;
 		this.headway_min = headway_min;
 		this.ovgk = ovgk;
 		this.drtAccessEgressTime_min = drtAccessEgressTime_min;
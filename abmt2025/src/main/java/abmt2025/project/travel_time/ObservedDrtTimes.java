@@ -0,0 +1,272 @@
+package abmt2025.project.travel_time;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.contrib.drt.passenger.events.DrtRequestSubmittedEvent;
+import org.matsim.contrib.drt.passenger.events.DrtRequestSubmittedEventHandler;
+import org.matsim.contrib.dvrp.optimizer.Request;
+import org.matsim.contrib.dvrp.passenger.PassengerDroppedOffEvent;
+import org.matsim.contrib.dvrp.passenger.PassengerDroppedOffEventHandler;
+import org.matsim.contrib.dvrp.passenger.PassengerPickedUpEvent;
+import org.matsim.contrib.dvrp.passenger.PassengerPickedUpEventHandler;
+import org.matsim.contrib.dvrp.passenger.PassengerRequestRejectedEvent;
+import org.matsim.contrib.dvrp.passenger.PassengerRequestRejectedEventHandler;
+import org.matsim.core.controler.events.AfterMobsimEvent;
+import org.matsim.core.controler.listener.AfterMobsimListener;
+
+/**
+ * Smoothed DRT waiting times and ride time factors, observed from the passenger
+ * events of the DRT mode.
+ *
+ * Requests are assigned to a square grid zone by the coordinate of their origin
+ * link and to a time bin by their submission time. Per zone and time bin, the
+ * table keeps the waiting time (submission to pickup) and the ride time factor
+ * (pickup to drop-off, divided by the unshared ride time of the request). An
+ * additional row aggregates all zones per time bin.
+ *
+ * After each mobsim, the observed means are blended into the estimates with
+ * exponential smoothing, as in {@link SmoothingTravelTime}. Cells that were
+ * never observed stay undefined (NaN). Estimates are published as an immutable
+ * {@link Snapshot} with a single volatile write, so predictions are lock-free.
+ */
+public class ObservedDrtTimes implements DrtRequestSubmittedEventHandler, PassengerPickedUpEventHandler,
+		PassengerDroppedOffEventHandler, PassengerRequestRejectedEventHandler, AfterMobsimListener {
+	static public final int NO_ZONE = -1;
+
+	private final String mode;
+
+	private final double startTime;
+	private final double interval;
+	private final int numberOfTimeBins;
+
+	private final double waitingTimeAlpha;
+	private final double rideFactorAlpha;
+
+	// Maps Id<Link>.index() to the zone (NO_ZONE if not part of the network)
+	private final int[] linkZones;
+	private final int numberOfZones;
+
+	// Accumulators of the current iteration, (numberOfZones + 1) * numberOfTimeBins
+	private final double[] waitingTimeSums;
+	private final int[] waitingTimeCounts;
+	private final double[] rideFactorSums;
+	private final int[] rideFactorCounts;
+
+	private final Map<Id<Request>, PendingRequest> pendingRequests = new HashMap<>();
+
+	private volatile Snapshot currentSnapshot;
+
+	public ObservedDrtTimes(String mode, double startTime, double endTime, double interval, double zoneSize,
+			double waitingTimeAlpha, double rideFactorAlpha, Network network) {
+		this.mode = mode;
+		this.startTime = startTime;
+		this.interval = interval;
+		this.numberOfTimeBins = (int) Math.floor((endTime - startTime) / interval) + 1;
+		this.waitingTimeAlpha = waitingTimeAlpha;
+		this.rideFactorAlpha = rideFactorAlpha;
+
+		// Only grid cells that contain links become zones, so the table stays small
+		int maximumLinkIndex = 0;
+
+		for (Link link : network.getLinks().values()) {
+			maximumLinkIndex = Math.max(maximumLinkIndex, link.getId().index());
+		}
+
+		this.linkZones = new int[maximumLinkIndex + 1];
+		Arrays.fill(linkZones, NO_ZONE);
+
+		Map<Long, Integer> cellZones = new HashMap<>();
+
+		for (Link link : network.getLinks().values()) {
+			Coord coord = link.getCoord();
+			long cellX = (long) Math.floor(coord.getX() / zoneSize);
+			long cellY = (long) Math.floor(coord.getY() / zoneSize);
+			long cell = (cellX << 32) ^ (cellY & 0xffffffffL);
+
+			linkZones[link.getId().index()] = cellZones.computeIfAbsent(cell, c -> cellZones.size());
+		}
+
+		this.numberOfZones = cellZones.size();
+
+		int size = (numberOfZones + 1) * numberOfTimeBins;
+		this.waitingTimeSums = new double[size];
+		this.waitingTimeCounts = new int[size];
+		this.rideFactorSums = new double[size];
+		this.rideFactorCounts = new int[size];
+
+		double[] initial = new double[size];
+		Arrays.fill(initial, Double.NaN);
+		this.currentSnapshot = new Snapshot(initial, initial.clone());
+	}
+
+	private int getTimeBin(double time) {
+		int bin = (int) Math.floor((time - startTime) / interval);
+		return Math.min(Math.max(bin, 0), numberOfTimeBins - 1);
+	}
+
+	private int getZone(Id<Link> linkId) {
+		int index = linkId.index();
+		return index < linkZones.length ? linkZones[index] : NO_ZONE;
+	}
+
+	@Override
+	public void handleEvent(DrtRequestSubmittedEvent event) {
+		if (!mode.equals(event.getMode())) {
+			return;
+		}
+
+		int zone = getZone(event.getFromLinkId());
+
+		if (zone != NO_ZONE) {
+			pendingRequests.put(event.getRequestId(), new PendingRequest(zone, getTimeBin(event.getTime()),
+					event.getTime(), event.getUnsharedRideTime()));
+		}
+	}
+
+	@Override
+	public void handleEvent(PassengerPickedUpEvent event) {
+		if (!mode.equals(event.getMode())) {
+			return;
+		}
+
+		PendingRequest request = pendingRequests.get(event.getRequestId());
+
+		// Group requests are picked up together, only the first pickup counts
+		if (request != null && Double.isNaN(request.pickupTime)) {
+			request.pickupTime = event.getTime();
+			add(waitingTimeSums, waitingTimeCounts, request, event.getTime() - request.submissionTime);
+		}
+	}
+
+	@Override
+	public void handleEvent(PassengerDroppedOffEvent event) {
+		if (!mode.equals(event.getMode())) {
+			return;
+		}
+
+		PendingRequest request = pendingRequests.remove(event.getRequestId());
+
+		if (request != null && !Double.isNaN(request.pickupTime) && request.unsharedRideTime > 0.0) {
+			add(rideFactorSums, rideFactorCounts, request,
+					(event.getTime() - request.pickupTime) / request.unsharedRideTime);
+		}
+	}
+
+	@Override
+	public void handleEvent(PassengerRequestRejectedEvent event) {
+		if (mode.equals(event.getMode())) {
+			pendingRequests.remove(event.getRequestId());
+		}
+	}
+
+	private void add(double[] sums, int[] counts, PendingRequest request, double value) {
+		int zoneIndex = request.zone * numberOfTimeBins + request.timeBin;
+		int allZonesIndex = numberOfZones * numberOfTimeBins + request.timeBin;
+
+		sums[zoneIndex] += value;
+		counts[zoneIndex]++;
+		sums[allZonesIndex] += value;
+		counts[allZonesIndex]++;
+	}
+
+	@Override
+	public void notifyAfterMobsim(AfterMobsimEvent event) {
+		Snapshot previous = currentSnapshot;
+
+		double[] waitingTimes = consolidate(previous.waitingTimes, waitingTimeSums, waitingTimeCounts,
+				waitingTimeAlpha);
+		double[] rideFactors = consolidate(previous.rideFactors, rideFactorSums, rideFactorCounts, rideFactorAlpha);
+
+		currentSnapshot = new Snapshot(waitingTimes, rideFactors);
+		pendingRequests.clear();
+	}
+
+	private static double[] consolidate(double[] previous, double[] sums, int[] counts, double alpha) {
+		double[] estimates = previous.clone();
+
+		for (int i = 0; i < estimates.length; i++) {
+			if (counts[i] > 0) {
+				double observed = sums[i] / counts[i];
+				estimates[i] = Double.isNaN(estimates[i]) ? observed
+						: (1.0 - alpha) * estimates[i] + alpha * observed;
+			}
+		}
+
+		Arrays.fill(sums, 0.0);
+		Arrays.fill(counts, 0);
+
+		return estimates;
+	}
+
+	@Override
+	public void reset(int iteration) {
+		pendingRequests.clear();
+	}
+
+	public Snapshot getCurrentSnapshot() {
+		return currentSnapshot;
+	}
+
+	/**
+	 * Expected waiting time in seconds for a request from the given link at the
+	 * given time. Falls back to the mean over all zones in the time bin; NaN if
+	 * neither has been observed yet.
+	 */
+	public double getWaitingTime(Id<Link> originLinkId, double time) {
+		Snapshot snapshot = currentSnapshot;
+		return snapshot.lookup(snapshot.waitingTimes, getZone(originLinkId), getTimeBin(time));
+	}
+
+	/**
+	 * Expected ratio of ride time to unshared ride time for a request from the
+	 * given link at the given time, with the same fallbacks as
+	 * {@link #getWaitingTime}.
+	 */
+	public double getRideFactor(Id<Link> originLinkId, double time) {
+		Snapshot snapshot = currentSnapshot;
+		return snapshot.lookup(snapshot.rideFactors, getZone(originLinkId), getTimeBin(time));
+	}
+
+	public class Snapshot {
+		private final double[] waitingTimes;
+		private final double[] rideFactors;
+
+		private Snapshot(double[] waitingTimes, double[] rideFactors) {
+			this.waitingTimes = waitingTimes;
+			this.rideFactors = rideFactors;
+		}
+
+		private double lookup(double[] estimates, int zone, int timeBin) {
+			if (zone != NO_ZONE) {
+				double estimate = estimates[zone * numberOfTimeBins + timeBin];
+
+				if (!Double.isNaN(estimate)) {
+					return estimate;
+				}
+			}
+
+			return estimates[numberOfZones * numberOfTimeBins + timeBin];
+		}
+	}
+
+	private static class PendingRequest {
+		final int zone;
+		final int timeBin;
+		final double submissionTime;
+		final double unsharedRideTime;
+		double pickupTime = Double.NaN;
+
+		PendingRequest(int zone, int timeBin, double submissionTime, double unsharedRideTime) {
+			this.zone = zone;
+			this.timeBin = timeBin;
+			this.submissionTime = submissionTime;
+			this.unsharedRideTime = unsharedRideTime;
+		}
+	}
+}
@@ -1,9 +1,15 @@
 package abmt2025.project.travel_time;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.events.LinkEnterEvent;
@@ -20,8 +26,42 @@ import org.matsim.core.controler.listener.AfterMobsimListener;
 import org.matsim.core.router.util.TravelTime;
 import org.matsim.vehicles.Vehicle;
 
+/**
+ * Smoothed, time-dependent link travel times.
+ *
+ * All per-link data is kept in flat arrays of size numberOfLinks *
+ * numberOfTimeBins (row-major by link), with rows addressed through
+ * {@link Id#index()}. Enter times are tracked in a single table indexed by the
+ * vehicle id index, since a vehicle can only be on one link at a time.
+ *
+ * Observations are accumulated with atomic array updates, so the handler can be
+ * fed from several event threads without a global lock. The enter time table is
+ * sized in {@link #reset} and does not change while events are handled.
+ *
+ * In parallel consolidation mode, the link range is split across ForkJoin
+ * workers after the mobsim. Links without observations in the iteration are
+ * tracked in a dirty bitset and are skipped once their estimates have settled
+ * on the freespeed defaults.
+ *
+ * Estimates are published as immutable {@link Snapshot}s. Consolidation writes
+ * into a fresh buffer and swaps it in with a single volatile write, so routers
+ * calling {@link #getLinkTravelTime} never see a partially updated iteration and
+ * need no synchronization. Optionally, the last few snapshots are retained for
+ * diagnostics.
+ *
+ * Observations are accumulated as differences: a traversal spanning the bins
+ * [start, end] adds its value at start and subtracts it at end + 1, so each
+ * event costs O(1) regardless of the bin size. The per-bin values are recovered
+ * with a running sum during consolidation. This keeps fine bins cheap and
+ * makes coarse bins combined with interpolation between bin centres (see
+ * {@code interpolate}) a viable way to save memory.
+ */
 public class SmoothingTravelTime implements TravelTime, LinkEnterEventHandler, LinkLeaveEventHandler,
 		VehicleLeavesTrafficEventHandler, AfterMobsimListener {
+	private static final VarHandle DOUBLE_ARRAY = MethodHandles.arrayElementVarHandle(double[].class);
+
+	private static final int NO_LINK = -1;
+
 	private final double startTime;
 	private final double interval;
 	private final boolean fixTravelTime;
@@ -32,19 +72,54 @@ public class SmoothingTravelTime implements TravelTime, LinkEnterEventHandler, L
 	private final int numberOfTimeBins;
 	private final int numberOfLinks;
 
-	private final Map<Id<Link>, Integer> id2index = new HashMap<>();
+	// Maps Id<Link>.index() to the row in the flat arrays (NO_LINK if not part of
+	// the network)
+	private final int[] linkIndices;
+	private final List<Id<Link>> linkIds;
+
+	private final boolean interpolate;
 
-	private final double[][] cumulativeTravelTimes;
-	private final double[][] travelTimeCounts;
-	private final double[][] estimates;
+	// Difference arrays with numberOfTimeBins + 1 entries per link
+	private final int accumulatorStride;
+	private final double[] cumulativeTravelTimes;
+	private final double[] travelTimeCounts;
 	private final double[] defaults;
 
-	private final List<Map<Id<Vehicle>, Double>> enterTimes;
+	private volatile Snapshot currentSnapshot;
+	private final Deque<Snapshot> snapshotHistory = new ArrayDeque<>();
+	private final int numberOfRetainedSnapshots;
+	private boolean warmStarted = false;
+
+	private EnterTimes enterTimes;
+
+	// Parallel consolidation: links observed in this iteration, and links whose
+	// estimates are a fixpoint of smoothing towards the defaults
+	private final ForkJoinPool consolidationPool;
+	private final int consolidationBatchSize;
+	private final AtomicLongArray dirtyLinks;
+	private final boolean[] settledLinks;
 
 	// Setup part: Handling indices and making space
 
 	public SmoothingTravelTime(double startTime, double endTime, double interval, double increasingAlpha,
 			double decreasingAlpha, boolean fixTravelTime, Network network) {
+		this(startTime, endTime, interval, increasingAlpha, decreasingAlpha, fixTravelTime, network, 0, 0, false);
+	}
+
+	/**
+	 * @param consolidationThreads      number of workers used to consolidate the
+	 *                                  estimates after the mobsim. Zero keeps the
+	 *                                  plain sequential pass over all links and
+	 *                                  bins.
+	 * @param numberOfRetainedSnapshots number of past iterations whose snapshots
+	 *                                  are kept in addition to the current one.
+	 * @param interpolate               interpolate linearly between the centres of
+	 *                                  the time bins instead of returning the value
+	 *                                  of the bin the query time falls into.
+	 */
+	public SmoothingTravelTime(double startTime, double endTime, double interval, double increasingAlpha,
+			double decreasingAlpha, boolean fixTravelTime, Network network, int consolidationThreads,
+			int numberOfRetainedSnapshots, boolean interpolate) {
 		this.increasingAlpha = increasingAlpha;
 		this.decreasingAlpha = decreasingAlpha;
 		this.fixTravelTime = fixTravelTime;
@@ -55,35 +130,59 @@ public class SmoothingTravelTime implements TravelTime, LinkEnterEventHandler, L
 		this.numberOfTimeBins = 1 + (int) Math.floor((endTime - startTime) / interval);
 		this.numberOfLinks = network.getLinks().size();
 
-		this.cumulativeTravelTimes = new double[numberOfLinks][numberOfTimeBins];
-		this.travelTimeCounts = new double[numberOfLinks][numberOfTimeBins];
-		this.estimates = new double[numberOfLinks][numberOfTimeBins];
+		this.interpolate = interpolate;
+
+		this.accumulatorStride = numberOfTimeBins + 1;
+		this.cumulativeTravelTimes = new double[numberOfLinks * accumulatorStride];
+		this.travelTimeCounts = new double[numberOfLinks * accumulatorStride];
 		this.defaults = new double[numberOfLinks];
-		this.enterTimes = new ArrayList<>(numberOfLinks);
 
+		this.linkIndices = new int[Id.getNumberOfIds(Link.class)];
+		Arrays.fill(linkIndices, NO_LINK);
+
+		this.linkIds = new ArrayList<>(numberOfLinks);
+
+		double[] estimates = new double[numberOfLinks * numberOfTimeBins];
 		int linkIndex = 0;
 
 		for (Link link : network.getLinks().values()) {
-			id2index.put(link.getId(), linkIndex);
+			linkIndices[link.getId().index()] = linkIndex;
+			linkIds.add(link.getId());
 
 			double defaultValue = link.getLength() / link.getFreespeed();
 
 			this.defaults[linkIndex] = defaultValue;
 
-			for (int t = 0; t < numberOfTimeBins; t++) {
-				this.estimates[linkIndex][t] = defaultValue;
-			}
-
-			enterTimes.add(new HashMap<>());
+			int offset = linkIndex * numberOfTimeBins;
+			Arrays.fill(estimates, offset, offset + numberOfTimeBins, defaultValue);
 
 			linkIndex++;
 		}
+
+		this.currentSnapshot = new Snapshot(Snapshot.INITIAL_ITERATION, estimates);
+		this.snapshotHistory.addLast(currentSnapshot);
+		this.numberOfRetainedSnapshots = numberOfRetainedSnapshots;
+
+		this.enterTimes = new EnterTimes(Id.getNumberOfIds(Vehicle.class));
+
+		if (consolidationThreads > 0) {
+			this.consolidationPool = new ForkJoinPool(consolidationThreads);
+			this.consolidationBatchSize = Math.max(64, numberOfLinks / (8 * consolidationThreads));
+			this.dirtyLinks = new AtomicLongArray((numberOfLinks + 63) >> 6);
+			this.settledLinks = new boolean[numberOfLinks];
+		} else {
+			this.consolidationPool = null;
+			this.consolidationBatchSize = 0;
+			this.dirtyLinks = null;
+			this.settledLinks = null;
+		}
 	}
 
 	private int getLinkIndex(Id<Link> linkId) {
-		Integer index = id2index.get(linkId);
+		int idIndex = linkId.index();
+		int index = idIndex < linkIndices.length ? linkIndices[idIndex] : NO_LINK;
 
-		if (index == null) {
+		if (index == NO_LINK) {
 			throw new IllegalStateException("Requested link for which we don't have an index");
 		}
 
@@ -98,72 +197,323 @@ public class SmoothingTravelTime implements TravelTime, LinkEnterEventHandler, L
 
 	@Override
 	public double getLinkTravelTime(Link link, double time, Person person, Vehicle vehicle) {
-		int linkIndex = getLinkIndex(link.getId());
-		double travelTime = Double.NaN;
+		return currentSnapshot.getLinkTravelTime(link.getId(), time);
+	}
 
-		if (time == Double.NEGATIVE_INFINITY) {//.isUndefinedTime(time)) {
-			// Special case when OnlyTimeDependencyTravelDisutility requests the lower bound
-			travelTime = defaults[linkIndex];
-		} else {
-			int timeIndex = getTimeIndex(time);
-			// travelTime = Math.max(estimates[linkIndex][timeIndex], defaults[linkIndex]);
-			travelTime = Math.max(estimates[linkIndex][timeIndex], defaults[linkIndex]);
+	/**
+	 * Returns the snapshot that is currently used for routing.
+	 */
+	public Snapshot getCurrentSnapshot() {
+		return currentSnapshot;
+	}
+
+	/**
+	 * Returns the snapshot published after the given iteration, or null if it is
+	 * not (or no longer) retained.
+	 */
+	public Snapshot getSnapshot(int iteration) {
+		synchronized (snapshotHistory) {
+			for (Snapshot snapshot : snapshotHistory) {
+				if (snapshot.getIteration() == iteration) {
+					return snapshot;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	// Warm start: Replace the freespeed defaults with estimates from a previous run
+
+	/**
+	 * Uses the given estimates (in the layout of {@link #getLinkIds()} and
+	 * {@link #getNumberOfTimeBins()}) as the starting point. The first iteration
+	 * is then smoothed into these estimates instead of replacing them.
+	 */
+	synchronized void warmStart(double[] estimates) {
+		if (estimates.length != numberOfLinks * numberOfTimeBins) {
+			throw new IllegalArgumentException("Estimates do not match the network and time bins");
 		}
 
-		if (fixTravelTime) {
-			travelTime = Math.floor(travelTime) + 1.0;
+		Snapshot snapshot = new Snapshot(Snapshot.INITIAL_ITERATION, estimates);
+
+		synchronized (snapshotHistory) {
+			snapshotHistory.clear();
+			snapshotHistory.addLast(snapshot);
+			currentSnapshot = snapshot;
 		}
 
-		return travelTime;
+		if (settledLinks != null) {
+			Arrays.fill(settledLinks, false);
+		}
+
+		warmStarted = true;
+	}
+
+	List<Id<Link>> getLinkIds() {
+		return linkIds;
+	}
+
+	int getNumberOfTimeBins() {
+		return numberOfTimeBins;
+	}
+
+	double getStartTime() {
+		return startTime;
+	}
+
+	double getInterval() {
+		return interval;
 	}
 
 	// Estimation part: After Mobsim, consolidate travel times
 
 	@Override
 	public void notifyAfterMobsim(AfterMobsimEvent event) {
+		double[] source = currentSnapshot.estimates;
+		double[] target = new double[source.length];
+
+		// After a warm start, there is history to smooth into from the beginning
+		boolean firstIteration = event.getIteration() == 0 && !warmStarted;
+
+		if (consolidationPool != null) {
+			consolidationPool.invoke(new ConsolidationTask(source, target, 0, numberOfLinks, firstIteration));
+		} else {
+			consolidateSequentially(source, target, firstIteration);
+		}
+
+		publish(new Snapshot(event.getIteration(), target));
+		enterTimes.clear();
+	}
+
+	private void publish(Snapshot snapshot) {
+		synchronized (snapshotHistory) {
+			currentSnapshot = snapshot;
+			snapshotHistory.addLast(snapshot);
+
+			if (snapshotHistory.size() > numberOfRetainedSnapshots + 1) {
+				snapshotHistory.removeFirst();
+			}
+		}
+	}
+
+	private void consolidateSequentially(double[] source, double[] target, boolean firstIteration) {
 		for (int l = 0; l < numberOfLinks; l++) {
+			int offset = l * numberOfTimeBins;
+			int accumulatorOffset = l * accumulatorStride;
+
+			double cumulativeTravelTime = 0.0;
+			double observedCount = 0.0;
+
 			for (int t = 0; t < numberOfTimeBins; t++) {
+				int cell = offset + t;
+
+				cumulativeTravelTime += cumulativeTravelTimes[accumulatorOffset + t];
+				observedCount += travelTimeCounts[accumulatorOffset + t];
+
 				double updatedTravelTime = defaults[l];
-				double observedCount = travelTimeCounts[l][t];
 
 				if (observedCount > 0.0) {
-					updatedTravelTime = cumulativeTravelTimes[l][t] / observedCount;
+					updatedTravelTime = cumulativeTravelTime / observedCount;
+				} else {
+					cumulativeTravelTime = 0.0;
 				}
 
-				if (event.getIteration() == 0) {
-					estimates[l][t] = updatedTravelTime;
+				if (firstIteration) {
+					target[cell] = updatedTravelTime;
 				} else {
-					double alpha = updatedTravelTime > estimates[l][t] ? increasingAlpha : decreasingAlpha;
-					estimates[l][t] = (1.0 - alpha) * estimates[l][t] + alpha * updatedTravelTime;
+					double alpha = updatedTravelTime > source[cell] ? increasingAlpha : decreasingAlpha;
+					target[cell] = (1.0 - alpha) * source[cell] + alpha * updatedTravelTime;
 				}
+			}
+		}
+
+		Arrays.fill(travelTimeCounts, 0.0);
+		Arrays.fill(cumulativeTravelTimes, 0.0);
+	}
+
+	private void consolidateLinks(double[] source, double[] target, int fromLink, int toLink,
+			boolean firstIteration) {
+		for (int l = fromLink; l < toLink; l++) {
+			if (isDirty(l)) {
+				consolidateObservedLink(source, target, l, firstIteration);
+				settledLinks[l] = false;
+			} else if (!settledLinks[l]) {
+				settledLinks[l] = consolidateUnobservedLink(source, target, l, firstIteration);
+			} else {
+				// The target is a fresh buffer, bring the settled row over
+				int from = l * numberOfTimeBins;
+				System.arraycopy(source, from, target, from, numberOfTimeBins);
+			}
+		}
+
+		// Each word of the bitset covers 64 links, only clear words fully owned here
+		int fromWord = (fromLink + 63) >> 6;
+		int toWord = toLink == numberOfLinks ? dirtyLinks.length() : toLink >> 6;
+
+		for (int w = fromWord; w < toWord; w++) {
+			dirtyLinks.set(w, 0L);
+		}
+	}
+
+	private void consolidateObservedLink(double[] source, double[] target, int l, boolean firstIteration) {
+		int from = l * numberOfTimeBins;
+		int accumulatorFrom = l * accumulatorStride;
+		double defaultValue = defaults[l];
+
+		// Turn the differences into per-bin values in place
+		double sum = 0.0;
+		double count = 0.0;
+
+		for (int t = 0; t < numberOfTimeBins; t++) {
+			int accumulator = accumulatorFrom + t;
 
-				travelTimeCounts[l][t] = 0.0;
-				cumulativeTravelTimes[l][t] = 0.0;
+			count += travelTimeCounts[accumulator];
+			sum = count > 0.0 ? sum + cumulativeTravelTimes[accumulator] : 0.0;
+
+			travelTimeCounts[accumulator] = count;
+			cumulativeTravelTimes[accumulator] = sum;
+		}
+
+		if (firstIteration) {
+			for (int t = 0; t < numberOfTimeBins; t++) {
+				double observedCount = travelTimeCounts[accumulatorFrom + t];
+				target[from + t] = observedCount > 0.0 ? cumulativeTravelTimes[accumulatorFrom + t] / observedCount
+						: defaultValue;
 			}
+		} else {
+			for (int t = 0; t < numberOfTimeBins; t++) {
+				double observedCount = travelTimeCounts[accumulatorFrom + t];
+				double observed = observedCount > 0.0 ? cumulativeTravelTimes[accumulatorFrom + t] / observedCount
+						: defaultValue;
+				double estimate = source[from + t];
+				double alpha = observed > estimate ? increasingAlpha : decreasingAlpha;
+				target[from + t] = (1.0 - alpha) * estimate + alpha * observed;
+			}
+		}
+
+		Arrays.fill(travelTimeCounts, accumulatorFrom, accumulatorFrom + accumulatorStride, 0.0);
+		Arrays.fill(cumulativeTravelTimes, accumulatorFrom, accumulatorFrom + accumulatorStride, 0.0);
+	}
+
+	/**
+	 * Smoothes the estimates of a link without observations towards its default.
+	 * Returns whether the pass left all bins unchanged, in which case any later
+	 * pass would do so as well and the link can be skipped.
+	 */
+	private boolean consolidateUnobservedLink(double[] source, double[] target, int l, boolean firstIteration) {
+		int from = l * numberOfTimeBins;
+		int to = from + numberOfTimeBins;
+		double defaultValue = defaults[l];
+
+		if (firstIteration) {
+			Arrays.fill(target, from, to, defaultValue);
+			return false;
+		}
+
+		boolean unchanged = true;
+
+		for (int cell = from; cell < to; cell++) {
+			double estimate = source[cell];
+			double alpha = defaultValue > estimate ? increasingAlpha : decreasingAlpha;
+			double updated = (1.0 - alpha) * estimate + alpha * defaultValue;
+
+			unchanged &= updated == estimate;
+			target[cell] = updated;
+		}
+
+		return unchanged;
+	}
+
+	private boolean isDirty(int linkIndex) {
+		return (dirtyLinks.get(linkIndex >> 6) & (1L << linkIndex)) != 0L;
+	}
+
+	private void markDirty(int linkIndex) {
+		int word = linkIndex >> 6;
+		long mask = 1L << linkIndex;
+
+		if ((dirtyLinks.get(word) & mask) == 0L) {
+			dirtyLinks.accumulateAndGet(word, mask, (a, b) -> a | b);
 		}
+	}
 
-		enterTimes.forEach(Map::clear);
+	private class ConsolidationTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final double[] source;
+		private final double[] target;
+		private final int fromLink;
+		private final int toLink;
+		private final boolean firstIteration;
+
+		ConsolidationTask(double[] source, double[] target, int fromLink, int toLink, boolean firstIteration) {
+			this.source = source;
+			this.target = target;
+			this.fromLink = fromLink;
+			this.toLink = toLink;
+			this.firstIteration = firstIteration;
+		}
+
+		@Override
+		protected void compute() {
+			if (toLink - fromLink <= consolidationBatchSize) {
+				consolidateLinks(source, target, fromLink, toLink, firstIteration);
+			} else {
+				// Split on multiples of 64 so that bitset words are owned by one task
+				int middle = ((fromLink + toLink) >>> 1) & ~63;
+
+				if (middle <= fromLink) {
+					consolidateLinks(source, target, fromLink, toLink, firstIteration);
+				} else {
+					invokeAll(new ConsolidationTask(source, target, fromLink, middle, firstIteration),
+							new ConsolidationTask(source, target, middle, toLink, firstIteration));
+				}
+			}
+		}
 	}
 
 	// Tracking part: Read events and save the data
 
+	@Override
+	public void reset(int iteration) {
+		// Make room for vehicles that have been created since the last iteration. The
+		// table is never replaced during the mobsim, vehicles whose ids are created
+		// after this point are only tracked from the next iteration on.
+		int numberOfVehicles = Id.getNumberOfIds(Vehicle.class);
+
+		if (enterTimes.capacity() < numberOfVehicles) {
+			enterTimes = new EnterTimes(numberOfVehicles);
+		}
+	}
+
 	@Override
 	public void handleEvent(LinkEnterEvent event) {
 		int linkIndex = getLinkIndex(event.getLinkId());
-		enterTimes.get(linkIndex).put(event.getVehicleId(), event.getTime());
+		int vehicleIndex = event.getVehicleId().index();
+
+		enterTimes.put(vehicleIndex, linkIndex, event.getTime());
 	}
 
 	private void handleLeaveLink(Id<Vehicle> vehicleId, Id<Link> linkId, double time) {
 		int linkIndex = getLinkIndex(linkId);
-		Double enterTime = enterTimes.get(linkIndex).remove(vehicleId);
+		double enterTime = enterTimes.remove(vehicleId.index(), linkIndex);
 
-		if (enterTime != null) {
+		if (!Double.isNaN(enterTime)) {
 			int startTimeIndex = getTimeIndex(enterTime);
 			int endTimeIndex = getTimeIndex(time);
 
-			for (int index = startTimeIndex; index <= endTimeIndex; index++) {
-				cumulativeTravelTimes[linkIndex][index] += time - enterTime;
-				travelTimeCounts[linkIndex][index] += 1.0;
+			int offset = linkIndex * accumulatorStride;
+			double travelTime = time - enterTime;
+
+			// The traversal counts for all bins from start to end
+			DOUBLE_ARRAY.getAndAdd(cumulativeTravelTimes, offset + startTimeIndex, travelTime);
+			DOUBLE_ARRAY.getAndAdd(travelTimeCounts, offset + startTimeIndex, 1.0);
+			DOUBLE_ARRAY.getAndAdd(cumulativeTravelTimes, offset + endTimeIndex + 1, -travelTime);
+			DOUBLE_ARRAY.getAndAdd(travelTimeCounts, offset + endTimeIndex + 1, -1.0);
+
+			if (dirtyLinks != null) {
+				markDirty(linkIndex);
 			}
 		}
 	}
@@ -177,4 +527,114 @@ public class SmoothingTravelTime implements TravelTime, LinkEnterEventHandler, L
 	public void handleEvent(LinkLeaveEvent event) {
 		handleLeaveLink(event.getVehicleId(), event.getLinkId(), event.getTime());
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Travel time estimates as published after one iteration. The underlying
+	 * buffer is allocated for this snapshot alone and never written after it has
+	 * been published.
+	 */
+	public class Snapshot {
+		static final int INITIAL_ITERATION = -1;
+
+		private final int iteration;
+		private final double[] estimates;
+
+		private Snapshot(int iteration, double[] estimates) {
+			this.iteration = iteration;
+			this.estimates = estimates;
+		}
+
+		/**
+		 * Iteration after which the snapshot has been published, or -1 for the
+		 * freespeed estimates before the first iteration.
+		 */
+		public int getIteration() {
+			return iteration;
+		}
+
+		double[] getEstimates() {
+			return estimates;
+		}
+
+		public double getLinkTravelTime(Id<Link> linkId, double time) {
+			int linkIndex = getLinkIndex(linkId);
+			double travelTime = Double.NaN;
+
+			if (time == Double.NEGATIVE_INFINITY) {//.isUndefinedTime(time)) {
+				// Special case when OnlyTimeDependencyTravelDisutility requests the lower bound
+				travelTime = defaults[linkIndex];
+			} else if (interpolate) {
+				travelTime = Math.max(interpolateEstimate(linkIndex * numberOfTimeBins, time), defaults[linkIndex]);
+			} else {
+				int timeIndex = getTimeIndex(time);
+				travelTime = Math.max(estimates[linkIndex * numberOfTimeBins + timeIndex], defaults[linkIndex]);
+			}
+
+			if (fixTravelTime) {
+				travelTime = Math.floor(travelTime) + 1.0;
+			}
+
+			return travelTime;
+		}
+
+		private double interpolateEstimate(int offset, double time) {
+			// Position relative to the bin centres
+			double position = (time - startTime) / interval - 0.5;
+
+			if (position <= 0.0) {
+				return estimates[offset];
+			} else if (position >= numberOfTimeBins - 1) {
+				return estimates[offset + numberOfTimeBins - 1];
+			}
+
+			int lowerIndex = (int) position;
+			double weight = position - lowerIndex;
+
+			return (1.0 - weight) * estimates[offset + lowerIndex] + weight * estimates[offset + lowerIndex + 1];
+		}
+	}
+
+	/**
+	 * Primitive vehicle index -> (link, enter time) table. Each slot is only
+	 * written by the events of its own vehicle, which arrive in order, so slots do
+	 * not need to be synchronized against each other.
+	 */
+	static private class EnterTimes {
+		private final int[] links;
+		private final double[] times;
+
+		EnterTimes(int capacity) {
+			this.links = new int[capacity];
+			this.times = new double[capacity];
+			Arrays.fill(links, NO_LINK);
+		}
+
+		int capacity() {
+			return links.length;
+		}
+
+		void put(int vehicleIndex, int linkIndex, double time) {
+			if (vehicleIndex < links.length) {
+				times[vehicleIndex] = time;
+				links[vehicleIndex] = linkIndex;
+			}
+		}
+
+		/**
+		 * Returns the enter time of the vehicle on the given link and forgets it, or
+		 * NaN if the vehicle has not been seen entering that link.
+		 */
+		double remove(int vehicleIndex, int linkIndex) {
+			if (vehicleIndex >= links.length || links[vehicleIndex] != linkIndex) {
+				return Double.NaN;
+			}
+
+			links[vehicleIndex] = NO_LINK;
+			return times[vehicleIndex];
+		}
+
+		void clear() {
+			Arrays.fill(links, NO_LINK);
+		}
+	}
+}
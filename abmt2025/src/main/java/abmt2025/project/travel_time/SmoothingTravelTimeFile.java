@@ -0,0 +1,221 @@
+package abmt2025.project.travel_time;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+
+/**
+ * Binary dump of the {@link SmoothingTravelTime} estimates.
+ *
+ * The file consists of a fixed-size header, the estimate matrix as big-endian
+ * doubles in link-major order, so it can be memory-mapped directly, and the
+ * link id of every row. The header stores the number of links and time bins,
+ * the time binning and a hash over the link ids in row order.
+ *
+ * If the hash matches the network the file is loaded for, the matrix is taken
+ * over as it is. Otherwise, the rows are matched to the network by link id, and
+ * links that are not contained in the file keep their freespeed defaults.
+ */
+public class SmoothingTravelTimeFile {
+	private static final Logger log = LogManager.getLogger(SmoothingTravelTimeFile.class);
+
+	static private final int MAGIC = 0x41535454; // "ASTT"
+	static private final int VERSION = 2;
+	static private final int HEADER_SIZE = 48;
+
+	static private final int NO_ROW = -1;
+
+	private SmoothingTravelTimeFile() {
+	}
+
+	static public void write(SmoothingTravelTime travelTime, File path) {
+		SmoothingTravelTime.Snapshot snapshot = travelTime.getCurrentSnapshot();
+		double[] estimates = snapshot.getEstimates();
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(travelTime.getLinkIds().size());
+		header.putInt(travelTime.getNumberOfTimeBins());
+		header.putDouble(travelTime.getStartTime());
+		header.putDouble(travelTime.getInterval());
+		header.putLong(hashLinkIds(travelTime.getLinkIds()));
+		header.putInt(snapshot.getIteration());
+		header.flip();
+
+		long bodySize = (long) estimates.length * Double.BYTES;
+
+		try (FileChannel channel = FileChannel.open(path.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			channel.write(header);
+
+			MappedByteBuffer body = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE, bodySize);
+			body.asDoubleBuffer().put(estimates);
+			body.force();
+
+			ByteBuffer linkIds = encodeLinkIds(travelTime.getLinkIds());
+			long position = HEADER_SIZE + bodySize;
+
+			while (linkIds.hasRemaining()) {
+				position += channel.write(linkIds, position);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		log.info("Wrote travel time estimates of iteration {} to {}", snapshot.getIteration(), path);
+	}
+
+	static public void read(SmoothingTravelTime travelTime, File path) {
+		List<Id<Link>> linkIds = travelTime.getLinkIds();
+		int numberOfLinks = linkIds.size();
+		int numberOfTimeBins = travelTime.getNumberOfTimeBins();
+
+		try (FileChannel channel = FileChannel.open(path.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+			}
+
+			header.flip();
+
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+				throw new IllegalStateException("Not a travel time estimates file: " + path);
+			}
+
+			int version = header.getInt();
+
+			if (version != VERSION) {
+				throw new IllegalStateException("Unsupported travel time estimates version " + version + ": " + path);
+			}
+
+			int fileLinks = header.getInt();
+			int fileTimeBins = header.getInt();
+			double fileStartTime = header.getDouble();
+			double fileInterval = header.getDouble();
+			long fileHash = header.getLong();
+			int fileIteration = header.getInt();
+
+			if (fileTimeBins != numberOfTimeBins || fileStartTime != travelTime.getStartTime()
+					|| fileInterval != travelTime.getInterval()) {
+				throw new IllegalStateException(String.format(
+						"Travel time estimates in %s use a different time binning (%d bins of %.0fs in file, %d bins of %.0fs configured)",
+						path, fileTimeBins, fileInterval, numberOfTimeBins, travelTime.getInterval()));
+			}
+
+			long bodySize = (long) fileLinks * numberOfTimeBins * Double.BYTES;
+			DoubleBuffer body = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, bodySize).asDoubleBuffer();
+
+			double[] estimates;
+
+			if (fileLinks == numberOfLinks && fileHash == hashLinkIds(linkIds)) {
+				// Same network, the rows are in the order of the network
+				estimates = new double[numberOfLinks * numberOfTimeBins];
+				body.get(estimates);
+			} else {
+				// Start from the freespeed defaults and take over the rows of known links
+				estimates = travelTime.getCurrentSnapshot().getEstimates().clone();
+
+				int[] rows = mapRows(channel, HEADER_SIZE + bodySize, fileLinks, linkIds);
+				int numberOfMatchedLinks = 0;
+
+				for (int fileRow = 0; fileRow < fileLinks; fileRow++) {
+					if (rows[fileRow] != NO_ROW) {
+						body.get(fileRow * numberOfTimeBins, estimates, rows[fileRow] * numberOfTimeBins,
+								numberOfTimeBins);
+						numberOfMatchedLinks++;
+					}
+				}
+
+				log.warn("Travel time estimates in {} were written for a different network, found {} of {} links",
+						path, numberOfMatchedLinks, numberOfLinks);
+			}
+
+			travelTime.warmStart(estimates);
+			log.info("Warm-started travel time estimates from iteration {} of {}", fileIteration, path);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	static private ByteBuffer encodeLinkIds(List<Id<Link>> linkIds) {
+		List<byte[]> values = new ArrayList<>(linkIds.size());
+		int size = 0;
+
+		for (Id<Link> linkId : linkIds) {
+			byte[] value = linkId.toString().getBytes(StandardCharsets.UTF_8);
+			values.add(value);
+			size += Integer.BYTES + value.length;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+
+		for (byte[] value : values) {
+			buffer.putInt(value.length);
+			buffer.put(value);
+		}
+
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Reads the link ids stored behind the matrix and returns the network row of
+	 * every file row, or NO_ROW for links that are not part of the network.
+	 */
+	static private int[] mapRows(FileChannel channel, long position, int fileLinks, List<Id<Link>> linkIds)
+			throws IOException {
+		Map<String, Integer> networkRows = new HashMap<>();
+
+		for (int row = 0; row < linkIds.size(); row++) {
+			networkRows.put(linkIds.get(row).toString(), row);
+		}
+
+		ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, channel.size() - position);
+		int[] rows = new int[fileLinks];
+
+		for (int fileRow = 0; fileRow < fileLinks; fileRow++) {
+			byte[] value = new byte[buffer.getInt()];
+			buffer.get(value);
+
+			rows[fileRow] = networkRows.getOrDefault(new String(value, StandardCharsets.UTF_8), NO_ROW);
+		}
+
+		return rows;
+	}
+
+	/**
+	 * 64-bit FNV-1a hash over the link ids in row order.
+	 */
+	static long hashLinkIds(List<Id<Link>> linkIds) {
+		long hash = 0xcbf29ce484222325L;
+
+		for (Id<Link> linkId : linkIds) {
+			for (byte value : linkId.toString().getBytes(StandardCharsets.UTF_8)) {
+				hash ^= value & 0xff;
+				hash *= 0x100000001b3L;
+			}
+
+			// Separator, so that ids cannot shift into each other
+			hash ^= 0xff;
+			hash *= 0x100000001b3L;
+		}
+
+		return hash;
+	}
+}
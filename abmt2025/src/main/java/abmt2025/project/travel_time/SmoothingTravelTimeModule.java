@@ -1,8 +1,12 @@
 package abmt2025.project.travel_time;
 
+import java.io.File;
+
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.groups.GlobalConfigGroup;
 import org.matsim.core.config.groups.TravelTimeCalculatorConfigGroup;
 import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
 
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
@@ -15,22 +19,47 @@ public class SmoothingTravelTimeModule extends AbstractModule {
 		addEventHandlerBinding().to(SmoothingTravelTime.class);
 		addControlerListenerBinding().to(SmoothingTravelTime.class);
 		addTravelTimeBinding("car").to(SmoothingTravelTime.class);
+		addControlerListenerBinding().to(SmoothingTravelTimeWriter.class);
 	}
 
 	@Provides
 	@Singleton
 	public SmoothingTravelTime provideSmoothingTravelTime(Network network, TravelTimeCalculatorConfigGroup config,
-			AstraConfigGroup astraConfig) {
+			GlobalConfigGroup globalConfig, AstraConfigGroup astraConfig) {
 		double startTime = 0.0;
 		double endTime = config.getMaxTime();
 		double interval = config.getTraveltimeBinSize();
 
+		if (astraConfig.getTravelTimeBinSize() > 0.0) {
+			// Coarser storage, usually combined with interpolation
+			interval = astraConfig.getTravelTimeBinSize();
+		}
+
 		boolean fixFreespeedTravelTime = true;
 
 		double smoothingIncreasingAlpha = astraConfig.getTravelTimeEstimationAlpha(); // 9;
 		double smoothingDecreasingAlpha = astraConfig.getTravelTimeEstimationAlpha();
 
-		return new SmoothingTravelTime(startTime, endTime, interval, smoothingIncreasingAlpha, smoothingDecreasingAlpha,
-				fixFreespeedTravelTime, network);
+		int consolidationThreads = astraConfig.getParallelTravelTimeConsolidation()
+				? globalConfig.getNumberOfThreads()
+				: 0;
+
+		SmoothingTravelTime travelTime = new SmoothingTravelTime(startTime, endTime, interval,
+				smoothingIncreasingAlpha, smoothingDecreasingAlpha, fixFreespeedTravelTime, network,
+				consolidationThreads, astraConfig.getTravelTimeSnapshotHistory(),
+				astraConfig.getTravelTimeInterpolation());
+
+		if (astraConfig.getTravelTimeInputPath() != null) {
+			SmoothingTravelTimeFile.read(travelTime, new File(astraConfig.getTravelTimeInputPath()));
+		}
+
+		return travelTime;
+	}
+
+	@Provides
+	@Singleton
+	public SmoothingTravelTimeWriter provideSmoothingTravelTimeWriter(SmoothingTravelTime travelTime,
+			OutputDirectoryHierarchy outputHierarchy, AstraConfigGroup astraConfig) {
+		return new SmoothingTravelTimeWriter(travelTime, outputHierarchy, astraConfig.getTravelTimeWriteInterval());
 	}
 }
\ No newline at end of file
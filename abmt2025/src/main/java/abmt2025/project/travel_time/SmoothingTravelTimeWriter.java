@@ -0,0 +1,42 @@
+package abmt2025.project.travel_time;
+
+import java.io.File;
+
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.events.ShutdownEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.controler.listener.ShutdownListener;
+
+/**
+ * Dumps the travel time estimates at shutdown, so that later runs can be
+ * warm-started from them. With a positive write interval, intermediate dumps are
+ * written into the iteration folders as well.
+ */
+public class SmoothingTravelTimeWriter implements IterationEndsListener, ShutdownListener {
+	static public final String FILE_NAME = "smoothing_travel_times.bin";
+
+	private final SmoothingTravelTime travelTime;
+	private final OutputDirectoryHierarchy outputHierarchy;
+	private final int writeInterval;
+
+	public SmoothingTravelTimeWriter(SmoothingTravelTime travelTime, OutputDirectoryHierarchy outputHierarchy,
+			int writeInterval) {
+		this.travelTime = travelTime;
+		this.outputHierarchy = outputHierarchy;
+		this.writeInterval = writeInterval;
+	}
+
+	@Override
+	public void notifyIterationEnds(IterationEndsEvent event) {
+		if (writeInterval > 0 && event.getIteration() > 0 && event.getIteration() % writeInterval == 0) {
+			SmoothingTravelTimeFile.write(travelTime,
+					new File(outputHierarchy.getIterationFilename(event.getIteration(), FILE_NAME)));
+		}
+	}
+
+	@Override
+	public void notifyShutdown(ShutdownEvent event) {
+		SmoothingTravelTimeFile.write(travelTime, new File(outputHierarchy.getOutputFilename("output_" + FILE_NAME)));
+	}
+}
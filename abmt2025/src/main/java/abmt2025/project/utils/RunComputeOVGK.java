@@ -0,0 +1,49 @@
+package abmt2025.project.utils;
+
+import java.io.File;
+import java.util.Set;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.config.CommandLine;
+import org.matsim.core.config.CommandLine.ConfigurationException;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.io.PopulationReader;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.facilities.MatsimFacilitiesReader;
+import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
+
+import abmt2025.project.mode_choice.ovgk.CachedOVGKCalculator;
+
+/**
+ * Computes the OVGK for all activity and facility coordinates of a scenario and
+ * writes them to a file that can be loaded through the ovgkCachePath option of
+ * the astra config group.
+ */
+public class RunComputeOVGK {
+	static public void main(String[] args) throws ConfigurationException {
+		CommandLine cmd = new CommandLine.Builder(args) //
+				.requireOptions("schedule-path", "population-path", "output-path") //
+				.allowOptions("facilities-path", "threads") //
+				.build();
+
+		int numberOfThreads = cmd.getOption("threads").map(Integer::parseInt)
+				.orElse(Runtime.getRuntime().availableProcessors());
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+
+		new TransitScheduleReader(scenario).readFile(cmd.getOptionStrict("schedule-path"));
+		new PopulationReader(scenario).readFile(cmd.getOptionStrict("population-path"));
+
+		if (cmd.hasOption("facilities-path")) {
+			new MatsimFacilitiesReader(scenario).readFile(cmd.getOptionStrict("facilities-path"));
+		}
+
+		CachedOVGKCalculator calculator = new CachedOVGKCalculator(scenario.getTransitSchedule());
+		Set<Coord> coords = CachedOVGKCalculator.collectCoords(scenario.getPopulation(),
+				scenario.getActivityFacilities());
+
+		calculator.precompute(coords, numberOfThreads);
+		calculator.write(new File(cmd.getOptionStrict("output-path")));
+	}
+}
@@ -1,55 +1,120 @@
-// // CLASS CODE FOR MATSIM 13 - COMMENTED TO AVOID ERRORS WHEN COMPILING
-
-// package abmt2025.project.utils;
-
-// // import org.eqasim.RunImputeHeadway
-
-// // adapted from @sebastianHorl's code for ASTRA16
-// import abmt2025.project.utils.headway.HeadwayImputer;
-// import abmt2025.project.utils.headway.HeadwayImputerModule;
-
-// import org.eqasim.core.misc.InjectorBuilder;
-// import org.eqasim.core.simulation.EqasimConfigurator;
-// import org.matsim.api.core.v01.Scenario;
-// import org.matsim.core.config.CommandLine;
-// import org.matsim.core.config.CommandLine.ConfigurationException;
-// import org.matsim.core.config.Config;
-// import org.matsim.core.config.ConfigUtils;
-// import org.matsim.core.population.io.PopulationWriter;
-// import org.matsim.core.scenario.ScenarioUtils;
-
-// import com.google.inject.Injector;
-// import org.matsim.pt.routes.DefaultTransitPassengerRouteFactory;
-// import org.matsim.pt.routes.TransitPassengerRoute;
-
-// public class RunImputeHeadway {
-//     static public void main(String[] args) throws ConfigurationException, InterruptedException {
-//         CommandLine cmd = new CommandLine.Builder(args) //
-//                 .requireOptions("config-path", "output-path") //
-//                 .allowOptions("threads", "batch-size") //
-//                 .build();
-
-//         Config config = ConfigUtils.loadConfig(cmd.getOptionStrict("config-path"),
-//                 EqasimConfigurator.getConfigGroups());
-//         cmd.applyConfiguration(config);
-//         config.replanning().clearStrategySettings();
-
-//         int batchSize = cmd.getOption("batch-size").map(Integer::parseInt).orElse(100);
-//         int numberOfThreads = cmd.getOption("threads").map(Integer::parseInt)
-//                 .orElse(Runtime.getRuntime().availableProcessors());
-
-//         Scenario scenario = ScenarioUtils.createScenario(config);
-//         scenario.getPopulation().getFactory().getRouteFactories().setRouteFactory(TransitPassengerRoute.class, new DefaultTransitPassengerRouteFactory());
-//         ScenarioUtils.loadScenario(scenario);
-
-//         Injector injector = new InjectorBuilder(scenario) //
-//                 .addOverridingModules(EqasimConfigurator.getModules()) //
-//                 .addOverridingModule(new HeadwayImputerModule(numberOfThreads, batchSize, true, 2.0 * 3600.0)) //
-//                 .build();
-
-//         HeadwayImputer headwayImputer = injector.getInstance(HeadwayImputer.class);
-//         headwayImputer.run(scenario.getPopulation());
-
-//         new PopulationWriter(scenario.getPopulation()).write(cmd.getOptionStrict("output-path"));
-//     }
-// }
+package abmt2025.project.utils;
+
+import java.io.File;
+import java.net.URL;
+
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.config.CommandLine;
+import org.matsim.core.config.CommandLine.ConfigurationException;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.io.PopulationWriter;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.io.IOUtils;
+
+import abmt2025.project.config.AstraConfigurator_Baseline;
+import abmt2025.project.utils.headway.HeadwayCache;
+import abmt2025.project.utils.headway.HeadwayCalculator;
+import abmt2025.project.utils.headway.HeadwayImputer;
+import abmt2025.project.utils.headway.HeadwayMatrix;
+import abmt2025.project.utils.headway.StreamingHeadwayImputer;
+import ch.sbb.matsim.routing.pt.raptor.RaptorUtils;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptor;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorData;
+
+/**
+ * Imputes the headway_min attribute of the origin activities of all trips in a
+ * population, adapted from the imputation script of the ASTRA 2016 project.
+ *
+ * The population is streamed from the plans file of the config (or from
+ * input-path) to output-path, see {@link StreamingHeadwayImputer}, so only the
+ * network, the schedule and at most queue-size persons are held in memory.
+ * Headways are calculated over a window of interval seconds (default 2 h)
+ * before and after the departure. With cache-size, headways are shared between
+ * trips with the same links and departure time bin (cache-time-bin seconds),
+ * and with cache-path the cache is kept between runs.
+ *
+ * With zone-grid-size or zone-shapefile, the headways are imputed in the zone
+ * matrix mode of {@link HeadwayImputer} instead. It needs all trips up front, so
+ * the population is loaded as a whole, and trips are processed in batches of at
+ * most batch-size. Zones are the cells of the grid [m] or the features of the shape file,
+ * named by zone-id-attribute, and the matrix has bins of matrix-time-bin seconds
+ * (default 15 min). With matrix-path the matrix is kept between runs.
+ */
+public class RunImputeHeadway {
+	static public void main(String[] args) throws ConfigurationException, InterruptedException {
+		CommandLine cmd = new CommandLine.Builder(args) //
+				.requireOptions("config-path", "output-path") //
+				.allowOptions("input-path", "threads", "queue-size", "interval", "replace-existing-headways",
+						"cache-size", "cache-time-bin", "cache-path", "zone-grid-size", "zone-shapefile",
+						"zone-id-attribute", "matrix-time-bin", "matrix-path", "batch-size") //
+				.build();
+
+		Config config = ConfigUtils.loadConfig(cmd.getOptionStrict("config-path"),
+				new AstraConfigurator_Baseline().getConfigGroups());
+		cmd.applyConfiguration(config);
+
+		int numberOfThreads = cmd.getOption("threads").map(Integer::parseInt)
+				.orElse(Runtime.getRuntime().availableProcessors());
+		int queueSize = cmd.getOption("queue-size").map(Integer::parseInt).orElse(10000);
+		double interval = cmd.getOption("interval").map(Double::parseDouble).orElse(2.0 * 3600.0);
+		boolean replaceExistingHeadways = cmd.getOption("replace-existing-headways").map(Boolean::parseBoolean)
+				.orElse(true);
+		int cacheSize = cmd.getOption("cache-size").map(Integer::parseInt).orElse(0);
+		double cacheTimeBin = cmd.getOption("cache-time-bin").map(Double::parseDouble).orElse(300.0);
+
+		boolean useZoneMatrix = cmd.hasOption("zone-grid-size") || cmd.hasOption("zone-shapefile");
+
+		URL inputUrl = cmd.hasOption("input-path")
+				? IOUtils.resolveFileOrResource(cmd.getOptionStrict("input-path"))
+				: config.plans().getInputFileURL(config.getContext());
+
+		// Households are not needed, the population is only loaded in matrix mode
+		config.plans().setInputFile(useZoneMatrix ? inputUrl.toString() : null);
+		config.households().setInputFile(null);
+
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		ScenarioUtils.loadScenario(scenario);
+
+		// Routing data is shared, every worker gets its own router
+		SwissRailRaptorData raptorData = SwissRailRaptorData.create(scenario.getTransitSchedule(),
+				scenario.getTransitVehicles(), RaptorUtils.createStaticConfig(config), scenario.getNetwork(), null);
+
+		File cachePath = cmd.getOption("cache-path").map(File::new).orElse(null);
+		HeadwayCache cache = cacheSize > 0 ? HeadwayCache.create(cacheSize, cacheTimeBin, cachePath) : null;
+
+		if (useZoneMatrix) {
+			int batchSize = cmd.getOption("batch-size").map(Integer::parseInt).orElse(100);
+			double zoneGridSize = cmd.getOption("zone-grid-size").map(Double::parseDouble).orElse(0.0);
+			double matrixTimeBin = cmd.getOption("matrix-time-bin").map(Double::parseDouble).orElse(900.0);
+			File matrixPath = cmd.getOption("matrix-path").map(File::new).orElse(null);
+
+			HeadwayMatrix matrix = HeadwayMatrix.create(scenario.getNetwork(), zoneGridSize,
+					cmd.getOption("zone-shapefile").orElse(null), cmd.getOption("zone-id-attribute").orElse(null),
+					matrixTimeBin, matrixPath);
+
+			// Writes the cache and the matrix itself
+			HeadwayImputer imputer = new HeadwayImputer(numberOfThreads, batchSize, replaceExistingHeadways,
+					scenario.getNetwork(),
+					() -> new HeadwayCalculator(new SwissRailRaptor.Builder(raptorData, config).build(), interval,
+							interval),
+					cache, cachePath, matrix, matrixPath);
+
+			imputer.run(scenario.getPopulation());
+			new PopulationWriter(scenario.getPopulation()).write(cmd.getOptionStrict("output-path"));
+			return;
+		}
+
+		StreamingHeadwayImputer imputer = new StreamingHeadwayImputer(numberOfThreads, queueSize,
+				replaceExistingHeadways, scenario.getNetwork(),
+				() -> new HeadwayCalculator(new SwissRailRaptor.Builder(raptorData, config).build(), interval,
+						interval),
+				cache);
+
+		imputer.run(scenario, inputUrl, cmd.getOptionStrict("output-path"));
+
+		if (cache != null && cachePath != null) {
+			cache.write(cachePath);
+		}
+	}
+}
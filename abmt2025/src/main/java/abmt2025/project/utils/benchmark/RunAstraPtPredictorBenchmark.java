@@ -0,0 +1,253 @@
+package abmt2025.project.utils.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eqasim.core.simulation.mode_choice.utilities.predictors.PtPredictor;
+import org.eqasim.switzerland.ovgk.OVGKCalculator;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.contribs.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import org.matsim.core.config.CommandLine;
+import org.matsim.core.config.CommandLine.ConfigurationException;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.pt.routes.DefaultTransitPassengerRoute;
+import org.matsim.pt.transitSchedule.api.Departure;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitRouteStop;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.pt.transitSchedule.api.TransitScheduleFactory;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+import org.matsim.utils.objectattributes.attributable.AttributesImpl;
+
+import abmt2025.project.mode_choice.predictors.AstraPtPredictor;
+import abmt2025.project.mode_choice.predictors.TransitCategoryIndex;
+import abmt2025.project.mode_choice.routing.DrtFilterMetrics;
+import abmt2025.project.mode_choice.routing.DrtIntermodalFilterModule;
+
+/**
+ * Measures the heap allocations of {@link AstraPtPredictor} per predicted trip
+ * on synthetic PT trips, half of them with DRT access and egress. The delegate
+ * PtPredictor is measured on its own as well, so that the overhead of the
+ * wrapper can be read off directly. For reference, the element list rebuilding
+ * of the previous implementation (new list, new walk leg per DRT leg) is
+ * measured in isolation.
+ */
+public class RunAstraPtPredictorBenchmark {
+	static public void main(String[] args) throws ConfigurationException {
+		CommandLine cmd = new CommandLine.Builder(args) //
+				.allowOptions("trips", "calls", "warmup-calls") //
+				.build();
+
+		int numberOfTrips = cmd.getOption("trips").map(Integer::parseInt).orElse(64);
+		int numberOfCalls = cmd.getOption("calls").map(Integer::parseInt).orElse(1000000);
+		int numberOfWarmupCalls = cmd.getOption("warmup-calls").map(Integer::parseInt).orElse(200000);
+
+		TransitSchedule schedule = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getTransitSchedule();
+		List<TransitStopFacility> stops = createSchedule(schedule);
+
+		PtPredictor ptPredictor = new PtPredictor((person, trip, elements) -> 0.0);
+		AstraPtPredictor predictor = new AstraPtPredictor(ptPredictor, new TransitCategoryIndex(schedule),
+				new OVGKCalculator(schedule), new DrtFilterMetrics());
+
+		Person person = PopulationUtils.getFactory().createPerson(Id.createPersonId("benchmark"));
+
+		List<DiscreteModeChoiceTrip> trips = new ArrayList<>(numberOfTrips);
+		List<List<PlanElement>> tripElements = new ArrayList<>(numberOfTrips);
+
+		for (int i = 0; i < numberOfTrips; i++) {
+			List<PlanElement> elements = createElements(schedule, stops, i, i % 2 == 0);
+			tripElements.add(elements);
+			trips.add(createTrip(elements, i));
+		}
+
+		// Trips are cycled, so the single-entry caches of the predictors never hit
+		Runnable predictorCall = new Runnable() {
+			int index = 0;
+
+			@Override
+			public void run() {
+				int trip = index++ % numberOfTrips;
+				predictor.predictVariables(person, trips.get(trip), tripElements.get(trip));
+			}
+		};
+
+		Runnable delegateCall = new Runnable() {
+			int index = 0;
+
+			@Override
+			public void run() {
+				int trip = index++ % numberOfTrips;
+				ptPredictor.predictVariables(person, trips.get(trip), tripElements.get(trip));
+			}
+		};
+
+		Runnable previousRebuild = new Runnable() {
+			int index = 0;
+			long sink = 0;
+
+			@Override
+			public void run() {
+				List<PlanElement> rebuilt = rebuildElements(tripElements.get(index++ % numberOfTrips));
+				sink += rebuilt.size();
+			}
+		};
+
+		System.out.println(String.format("Trips: %d, calls: %d", numberOfTrips, numberOfCalls));
+
+		for (Runnable call : Arrays.asList(predictorCall, delegateCall, previousRebuild)) {
+			measure(call, numberOfWarmupCalls);
+		}
+
+		report("AstraPtPredictor", measure(predictorCall, numberOfCalls), numberOfCalls);
+		report("PtPredictor (delegate only)", measure(delegateCall, numberOfCalls), numberOfCalls);
+		report("Previous element list rebuild", measure(previousRebuild, numberOfCalls), numberOfCalls);
+	}
+
+	static private long[] measure(Runnable call, int numberOfCalls) {
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+
+		long startBytes = threadBean.getCurrentThreadAllocatedBytes();
+		long startTime = System.nanoTime();
+
+		for (int i = 0; i < numberOfCalls; i++) {
+			call.run();
+		}
+
+		return new long[] { threadBean.getCurrentThreadAllocatedBytes() - startBytes, System.nanoTime() - startTime };
+	}
+
+	static private void report(String name, long[] result, int numberOfCalls) {
+		System.out.println(String.format("  %-32s %8.1f bytes/call %8.1f ns/call", name,
+				(double) result[0] / numberOfCalls, (double) result[1] / numberOfCalls));
+	}
+
+	/**
+	 * What the predictor did before: copy the elements into a new list and replace
+	 * every DRT leg by a newly created walk leg.
+	 */
+	static private List<PlanElement> rebuildElements(List<PlanElement> elements) {
+		List<PlanElement> filteredElements = new ArrayList<>();
+
+		for (PlanElement element : elements) {
+			if (element instanceof Leg && isDrtMode(((Leg) element).getMode())) {
+				Leg leg = (Leg) element;
+				Leg walkLeg = PopulationUtils.createLeg(TransportMode.walk);
+				walkLeg.setTravelTime(leg.getTravelTime().seconds());
+				walkLeg.setRoute(leg.getRoute());
+				filteredElements.add(walkLeg);
+			} else {
+				filteredElements.add(element);
+			}
+		}
+
+		return filteredElements;
+	}
+
+	static private boolean isDrtMode(String mode) {
+		return TransportMode.drt.equals(mode) || DrtIntermodalFilterModule.DRT_ACCESS_MODE.equals(mode);
+	}
+
+	static private List<TransitStopFacility> createSchedule(TransitSchedule schedule) {
+		TransitScheduleFactory factory = schedule.getFactory();
+		List<TransitStopFacility> stops = new ArrayList<>();
+
+		for (int i = 0; i < 10; i++) {
+			TransitStopFacility stop = factory.createTransitStopFacility(Id.create("stop" + i, TransitStopFacility.class),
+					new Coord(1000.0 * i, 0.0), false);
+			stop.setLinkId(Id.createLinkId("link" + i));
+			schedule.addStopFacility(stop);
+			stops.add(stop);
+		}
+
+		for (String mode : Arrays.asList("rail", "bus")) {
+			TransitLine line = factory.createTransitLine(Id.create(mode, TransitLine.class));
+			List<TransitRouteStop> routeStops = new ArrayList<>();
+
+			for (int i = 0; i < stops.size(); i++) {
+				routeStops.add(factory.createTransitRouteStop(stops.get(i), 120.0 * i, 120.0 * i));
+			}
+
+			TransitRoute route = factory.createTransitRoute(Id.create(mode, TransitRoute.class), null, routeStops, mode);
+
+			for (int i = 0; i < 100; i++) {
+				route.addDeparture(factory.createDeparture(Id.create(mode + i, Departure.class),
+						5.0 * 3600.0 + 600.0 * i));
+			}
+
+			line.addRoute(route);
+			schedule.addTransitLine(line);
+		}
+
+		return stops;
+	}
+
+	static private List<PlanElement> createElements(TransitSchedule schedule, List<TransitStopFacility> stops,
+			int index, boolean withDrt) {
+		List<PlanElement> elements = new ArrayList<>();
+		String accessMode = withDrt ? DrtIntermodalFilterModule.DRT_ACCESS_MODE : TransportMode.walk;
+		double departureTime = 8.0 * 3600.0 + index;
+
+		Leg access = PopulationUtils.createLeg(accessMode);
+		access.setDepartureTime(departureTime);
+		access.setTravelTime(300.0);
+		access.setRoute(RouteUtils.createGenericRouteImpl(Id.createLinkId("origin"), stops.get(0).getLinkId()));
+		elements.add(access);
+
+		int stopIndex = 0;
+
+		for (String mode : Arrays.asList("rail", "bus")) {
+			Activity interaction = PopulationUtils.createStageActivityFromCoordLinkIdAndModePrefix(
+					stops.get(stopIndex).getCoord(), stops.get(stopIndex).getLinkId(), TransportMode.pt);
+			elements.add(interaction);
+
+			TransitLine line = schedule.getTransitLines().get(Id.create(mode, TransitLine.class));
+			TransitRoute transitRoute = line.getRoutes().get(Id.create(mode, TransitRoute.class));
+
+			DefaultTransitPassengerRoute route = new DefaultTransitPassengerRoute(stops.get(stopIndex), line,
+					transitRoute, stops.get(stopIndex + 4));
+			route.setTravelTime(600.0);
+			route.setBoardingTime(departureTime + 600.0 * (stopIndex + 1));
+
+			Leg leg = PopulationUtils.createLeg(TransportMode.pt);
+			leg.setDepartureTime(departureTime + 300.0 + 600.0 * stopIndex);
+			leg.setTravelTime(900.0);
+			leg.setRoute(route);
+			elements.add(leg);
+
+			stopIndex += 4;
+		}
+
+		Activity interaction = PopulationUtils.createStageActivityFromCoordLinkIdAndModePrefix(
+				stops.get(stopIndex).getCoord(), stops.get(stopIndex).getLinkId(), TransportMode.pt);
+		elements.add(interaction);
+
+		Leg egress = PopulationUtils.createLeg(accessMode);
+		egress.setDepartureTime(departureTime + 2100.0);
+		egress.setTravelTime(240.0);
+		egress.setRoute(RouteUtils.createGenericRouteImpl(stops.get(stopIndex).getLinkId(), Id.createLinkId("destination")));
+		elements.add(egress);
+
+		return elements;
+	}
+
+	static private DiscreteModeChoiceTrip createTrip(List<PlanElement> elements, int index) {
+		Activity origin = PopulationUtils.createActivityFromCoord("home", new Coord(-500.0, 100.0 * index));
+		Activity destination = PopulationUtils.createActivityFromCoord("work", new Coord(9500.0, 100.0 * index));
+
+		return new DiscreteModeChoiceTrip(origin, destination, TransportMode.pt, elements, index, 0, 0,
+				new AttributesImpl());
+	}
+}
@@ -0,0 +1,343 @@
+package abmt2025.project.utils.benchmark;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.eqasim.core.simulation.mode_choice.utilities.predictors.CarPredictor;
+import org.eqasim.core.simulation.mode_choice.utilities.predictors.PtPredictor;
+import org.eqasim.core.simulation.mode_choice.utilities.variables.BikeVariables;
+import org.eqasim.core.simulation.mode_choice.utilities.variables.CarVariables;
+import org.eqasim.core.simulation.mode_choice.utilities.variables.PersonVariables;
+import org.eqasim.core.simulation.mode_choice.utilities.variables.PtVariables;
+import org.eqasim.core.simulation.mode_choice.utilities.variables.WalkVariables;
+import org.eqasim.switzerland.mode_choice.utilities.variables.SwissPersonVariables;
+import org.eqasim.switzerland.ovgk.OVGK;
+import org.eqasim.switzerland.ovgk.OVGKCalculator;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.contribs.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import org.matsim.core.config.CommandLine;
+import org.matsim.core.config.CommandLine.ConfigurationException;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.utils.objectattributes.attributable.AttributesImpl;
+
+import abmt2025.project.mode_choice.AstraModeParameters_DRT;
+import abmt2025.project.mode_choice.estimators.AstraBikeUtilityEstimator_DRT;
+import abmt2025.project.mode_choice.estimators.AstraCarUtilityEstimator_DRT;
+import abmt2025.project.mode_choice.estimators.AstraPtUtilityEstimator_DRT;
+import abmt2025.project.mode_choice.estimators.AstraWalkUtilityEstimator_DRT;
+import abmt2025.project.mode_choice.estimators.BatchUtilityEstimator;
+import abmt2025.project.mode_choice.estimators.DRTUtilityEstimator;
+import abmt2025.project.mode_choice.estimators.TripInteractionContext;
+import abmt2025.project.mode_choice.estimators.UtilityBlock;
+import abmt2025.project.mode_choice.predictors.AstraBikePredictor;
+import abmt2025.project.mode_choice.predictors.AstraPersonPredictor;
+import abmt2025.project.mode_choice.predictors.AstraPersonTable;
+import abmt2025.project.mode_choice.predictors.AstraPtPredictor;
+import abmt2025.project.mode_choice.predictors.AstraTripPredictor;
+import abmt2025.project.mode_choice.predictors.AstraWalkPredictor;
+import abmt2025.project.mode_choice.predictors.DRTPredictor;
+import abmt2025.project.mode_choice.predictors.TransitCategoryIndex;
+import abmt2025.project.mode_choice.predictors.TripAttributeTable;
+import abmt2025.project.mode_choice.routing.DrtFilterMetrics;
+import abmt2025.project.mode_choice.variables.AstraBikeVariables;
+import abmt2025.project.mode_choice.variables.AstraPersonVariables;
+import abmt2025.project.mode_choice.variables.AstraPtVariables;
+import abmt2025.project.mode_choice.variables.AstraTripVariables;
+import abmt2025.project.mode_choice.variables.AstraWalkVariables;
+import abmt2025.project.mode_choice.variables.DRTVariables;
+
+/**
+ * Compares the scalar and the batch utility evaluation of the car, bike, walk,
+ * PT and DRT estimators of the DRT scenario on random synthetic trips and checks
+ * that both give bit-identical utilities. The predictors return prepared
+ * variables, so that only the estimation itself is measured.
+ */
+public class RunBatchUtilityBenchmark {
+	static public void main(String[] args) throws ConfigurationException {
+		CommandLine cmd = new CommandLine.Builder(args) //
+				.allowOptions("trips", "block-size", "rounds", "warmup-rounds", "seed") //
+				.build();
+
+		int numberOfTrips = cmd.getOption("trips").map(Integer::parseInt).orElse(100000);
+		int blockSize = cmd.getOption("block-size").map(Integer::parseInt).orElse(256);
+		int numberOfRounds = cmd.getOption("rounds").map(Integer::parseInt).orElse(20);
+		int numberOfWarmupRounds = cmd.getOption("warmup-rounds").map(Integer::parseInt).orElse(5);
+		long seed = cmd.getOption("seed").map(Long::parseLong).orElse(0L);
+
+		Random random = new Random(seed);
+
+		Person person = PopulationUtils.getFactory().createPerson(Id.createPersonId("benchmark"));
+		List<DiscreteModeChoiceTrip> trips = new ArrayList<>(numberOfTrips);
+		List<List<PlanElement>> tripElements = new ArrayList<>(numberOfTrips);
+
+		Map<List<? extends PlanElement>, CarVariables> carVariables = new IdentityHashMap<>();
+		Map<List<? extends PlanElement>, AstraBikeVariables> bikeVariables = new IdentityHashMap<>();
+		Map<List<? extends PlanElement>, AstraWalkVariables> walkVariables = new IdentityHashMap<>();
+		Map<List<? extends PlanElement>, AstraPtVariables> ptVariables = new IdentityHashMap<>();
+		Map<List<? extends PlanElement>, DRTVariables> drtVariables = new IdentityHashMap<>();
+		Map<List<? extends PlanElement>, AstraPersonVariables> personVariables = new IdentityHashMap<>();
+		Map<List<? extends PlanElement>, AstraTripVariables> tripVariables = new IdentityHashMap<>();
+
+		for (int i = 0; i < numberOfTrips; i++) {
+			List<PlanElement> elements = new ArrayList<>();
+			elements.add(PopulationUtils.createLeg(TransportMode.pt));
+
+			tripElements.add(elements);
+			trips.add(createTrip(elements, i));
+
+			double euclideanDistance_km = 0.5 + 50.0 * random.nextDouble();
+
+			carVariables.put(elements, new CarVariables(60.0 * random.nextDouble(), 20.0 * random.nextDouble(),
+					euclideanDistance_km, 10.0 * random.nextDouble()));
+			bikeVariables.put(elements,
+					new AstraBikeVariables(new BikeVariables(90.0 * random.nextDouble()), euclideanDistance_km));
+			walkVariables.put(elements,
+					new AstraWalkVariables(new WalkVariables(150.0 * random.nextDouble()), euclideanDistance_km));
+			ptVariables.put(elements, createPtVariables(random));
+			drtVariables.put(elements, new DRTVariables(15.0 * random.nextDouble(), 40.0 * random.nextDouble(),
+					10.0 * random.nextDouble(), 15.0 * random.nextDouble()));
+			personVariables.put(elements, new AstraPersonVariables(new SwissPersonVariables(
+					new PersonVariables(18 + random.nextInt(70)), new Coord(0.0, 0.0), random.nextBoolean(),
+					random.nextBoolean(), random.nextBoolean(), 0), 2000.0 + 20000.0 * random.nextDouble()));
+			tripVariables.put(elements, new AstraTripVariables(random.nextBoolean(), random.nextBoolean()));
+		}
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+
+		AstraModeParameters_DRT parameters = createParameters();
+
+		CarPredictor carPredictor = new CarPredictor(parameters, (p, t, e) -> 0.0) {
+			@Override
+			public CarVariables predict(Person person, DiscreteModeChoiceTrip trip,
+					List<? extends PlanElement> elements) {
+				return carVariables.get(elements);
+			}
+		};
+
+		AstraBikePredictor bikePredictor = new AstraBikePredictor(null) {
+			@Override
+			protected AstraBikeVariables predict(Person person, DiscreteModeChoiceTrip trip,
+					List<? extends PlanElement> elements) {
+				return bikeVariables.get(elements);
+			}
+		};
+
+		AstraWalkPredictor walkPredictor = new AstraWalkPredictor(null) {
+			@Override
+			protected AstraWalkVariables predict(Person person, DiscreteModeChoiceTrip trip,
+					List<? extends PlanElement> elements) {
+				return walkVariables.get(elements);
+			}
+		};
+
+		AstraPtPredictor ptPredictor = new AstraPtPredictor(new PtPredictor((p, t, e) -> 0.0),
+				new TransitCategoryIndex(scenario.getTransitSchedule()),
+				new OVGKCalculator(scenario.getTransitSchedule()), new DrtFilterMetrics()) {
+			@Override
+			protected AstraPtVariables predict(Person person, DiscreteModeChoiceTrip trip,
+					List<? extends PlanElement> elements) {
+				return ptVariables.get(elements);
+			}
+		};
+
+		DRTPredictor drtPredictor = new DRTPredictor(parameters, (p, t, e) -> 0.0, scenario.getConfig(),
+				() -> null) {
+			@Override
+			protected DRTVariables predict(Person person, DiscreteModeChoiceTrip trip,
+					List<? extends PlanElement> elements) {
+				return drtVariables.get(elements);
+			}
+		};
+
+		AstraPersonPredictor personPredictor = new AstraPersonPredictor(null,
+				new AstraPersonTable(scenario.getPopulation())) {
+			@Override
+			protected AstraPersonVariables predict(Person person, DiscreteModeChoiceTrip trip,
+					List<? extends PlanElement> elements) {
+				return personVariables.get(elements);
+			}
+		};
+
+		AstraTripPredictor tripPredictor = new AstraTripPredictor(new TripAttributeTable(scenario.getPopulation(),
+				scenario.getActivityFacilities(), scenario.getConfig())) {
+			@Override
+			protected AstraTripVariables predict(Person person, DiscreteModeChoiceTrip trip,
+					List<? extends PlanElement> elements) {
+				return tripVariables.get(elements);
+			}
+		};
+
+		TripInteractionContext interactions = new TripInteractionContext(parameters);
+		int numberOfMismatches = 0;
+
+		System.out.println(String.format("Trips: %d, block size: %d, rounds: %d", numberOfTrips, blockSize,
+				numberOfRounds));
+
+		numberOfMismatches += runBenchmark("Car", new AstraCarUtilityEstimator_DRT(parameters, carPredictor,
+				personPredictor, tripPredictor, interactions), person, trips, tripElements, blockSize,
+				numberOfRounds, numberOfWarmupRounds);
+		numberOfMismatches += runBenchmark("Bike", new AstraBikeUtilityEstimator_DRT(parameters, bikePredictor,
+				personPredictor, tripPredictor, interactions), person, trips, tripElements, blockSize,
+				numberOfRounds, numberOfWarmupRounds);
+		numberOfMismatches += runBenchmark("Walk", new AstraWalkUtilityEstimator_DRT(parameters, walkPredictor,
+				personPredictor, tripPredictor, interactions), person, trips, tripElements, blockSize,
+				numberOfRounds, numberOfWarmupRounds);
+		numberOfMismatches += runBenchmark("PT", new AstraPtUtilityEstimator_DRT(parameters, ptPredictor,
+				personPredictor, tripPredictor, interactions), person, trips, tripElements, blockSize,
+				numberOfRounds, numberOfWarmupRounds);
+		numberOfMismatches += runBenchmark("DRT", new DRTUtilityEstimator(parameters, drtPredictor,
+				personPredictor, tripPredictor, null), person, trips, tripElements, blockSize, numberOfRounds,
+				numberOfWarmupRounds);
+
+		if (numberOfMismatches > 0) {
+			throw new IllegalStateException("Batch and scalar utilities differ for " + numberOfMismatches + " trips");
+		}
+	}
+
+	/**
+	 * Times the scalar and the batch path of one estimator and returns the number
+	 * of trips for which the utilities differ.
+	 */
+	static private <C extends Enum<C>> int runBenchmark(String name, BatchUtilityEstimator<C> estimator,
+			Person person, List<DiscreteModeChoiceTrip> trips, List<List<PlanElement>> tripElements, int blockSize,
+			int numberOfRounds, int numberOfWarmupRounds) {
+		int numberOfTrips = trips.size();
+
+		double[] scalarUtilities = new double[numberOfTrips];
+		double[] batchUtilities = new double[numberOfTrips];
+		UtilityBlock<C> block = estimator.createBlock(blockSize);
+		double[] blockUtilities = new double[blockSize];
+
+		long scalarTime_ns = 0;
+		long batchTime_ns = 0;
+
+		for (int round = 0; round < numberOfWarmupRounds + numberOfRounds; round++) {
+			long startTime = System.nanoTime();
+
+			for (int i = 0; i < numberOfTrips; i++) {
+				scalarUtilities[i] = estimator.estimateUtility(person, trips.get(i), tripElements.get(i));
+			}
+
+			long scalarEndTime = System.nanoTime();
+
+			for (int offset = 0; offset < numberOfTrips; offset += blockSize) {
+				int end = Math.min(numberOfTrips, offset + blockSize);
+				block.clear();
+
+				for (int i = offset; i < end; i++) {
+					estimator.addTrip(block, person, trips.get(i), tripElements.get(i));
+				}
+
+				estimator.estimateUtilities(block, blockUtilities);
+				System.arraycopy(blockUtilities, 0, batchUtilities, offset, end - offset);
+			}
+
+			long batchEndTime = System.nanoTime();
+
+			if (round >= numberOfWarmupRounds) {
+				scalarTime_ns += scalarEndTime - startTime;
+				batchTime_ns += batchEndTime - scalarEndTime;
+			}
+		}
+
+		int numberOfMismatches = 0;
+
+		for (int i = 0; i < numberOfTrips; i++) {
+			if (Double.doubleToLongBits(scalarUtilities[i]) != Double.doubleToLongBits(batchUtilities[i])) {
+				numberOfMismatches++;
+			}
+		}
+
+		long numberOfCalls = (long) numberOfTrips * numberOfRounds;
+
+		System.out.println(name);
+		System.out.println(String.format("  %-10s %8.1f ns/trip", "Scalar", (double) scalarTime_ns / numberOfCalls));
+		System.out.println(String.format("  %-10s %8.1f ns/trip", "Batch", (double) batchTime_ns / numberOfCalls));
+		System.out.println(String.format("  Mismatching utilities: %d", numberOfMismatches));
+
+		return numberOfMismatches;
+	}
+
+	static private AstraModeParameters_DRT createParameters() {
+		AstraModeParameters_DRT parameters = new AstraModeParameters_DRT();
+
+		parameters.betaCost_u_MU = -0.0888;
+		parameters.lambdaCostHouseholdIncome = -0.8169;
+		parameters.lambdaCostEuclideanDistance = -0.2209;
+		parameters.lambdaTravelTimeEuclideanDistance = 0.1147;
+		parameters.referenceEuclideanDistance_km = 39.0;
+		parameters.referenceHouseholdIncome_MU = 12260.0;
+
+		parameters.car.alpha_u = 0.2235;
+		parameters.car.betaTravelTime_u_min = -0.0192;
+		parameters.walk.alpha_u = 0.5903;
+		parameters.walk.betaTravelTime_u_min = -0.0457;
+		parameters.bike.alpha_u = 0.1522;
+		parameters.bike.betaTravelTime_u_min = -0.1258;
+
+		parameters.pt.alpha_u = 0.0;
+		parameters.pt.betaWaitingTime_u_min = -0.0124;
+		parameters.pt.betaAccessEgressTime_u_min = -0.0142;
+
+		parameters.astraPt.betaRailTravelTime_u_min = -0.0072;
+		parameters.astraPt.betaBusTravelTime_u_min = -0.0124;
+		parameters.astraPt.betaFeederTravelTime_u_min = -0.0452;
+		parameters.astraPt.betaHeadway_u_min = -0.0301;
+		parameters.astraPt.betaOvgkB_u = -1.7436;
+		parameters.astraPt.betaOvgkC_u = -1.6413;
+		parameters.astraPt.betaOvgkD_u = -0.9649;
+		parameters.astraPt.betaOvgkNone_u = -1.0889;
+
+		parameters.astraCar.betaAgeOver60 = -0.1;
+		parameters.astraCar.betaWork = -1.1606;
+		parameters.astraCar.betaCity = -0.459;
+
+		parameters.astraBike.betaAgeOver60 = -2.6588;
+		parameters.astraBike.betaWork = -0.2;
+
+		parameters.astraWalk.betaAgeOver60 = 0.2062;
+		parameters.astraWalk.betaWork = -0.5467;
+		parameters.astraWalk.travelTimeThreshold_min = 120.0;
+
+		parameters.astraDRT.betaASC = -0.061;
+		parameters.astraDRT.betaInVehicleTime = -0.015;
+		parameters.astraDRT.betaWaitingTime = -0.03;
+		parameters.astraDRT.betaWork = -1.938;
+
+		return parameters;
+	}
+
+	static private AstraPtVariables createPtVariables(Random random) {
+		double railTravelTime_min = random.nextBoolean() ? 60.0 * random.nextDouble() : 0.0;
+		double busTravelTime_min = random.nextBoolean() ? 30.0 * random.nextDouble() : 0.0;
+		boolean hasDrtAccess = random.nextInt(4) == 0;
+
+		PtVariables delegate = new PtVariables(railTravelTime_min + busTravelTime_min, 15.0 * random.nextDouble(),
+				20.0 * random.nextDouble(), random.nextInt(4), 10.0 * random.nextDouble(),
+				0.5 + 50.0 * random.nextDouble());
+
+		return new AstraPtVariables(delegate, railTravelTime_min, busTravelTime_min, 0.0, 0.0,
+				1.0 + 59.0 * random.nextDouble(), OVGK.values()[random.nextInt(OVGK.values().length)],
+				hasDrtAccess ? 10.0 * random.nextDouble() : 0.0, hasDrtAccess ? 8.0 * random.nextDouble() : 0.0,
+				hasDrtAccess);
+	}
+
+	static private DiscreteModeChoiceTrip createTrip(List<PlanElement> elements, int index) {
+		Activity origin = PopulationUtils.createActivityFromCoord("home", new Coord(0.0, index));
+		Activity destination = PopulationUtils.createActivityFromCoord("work", new Coord(1000.0, index));
+
+		return new DiscreteModeChoiceTrip(origin, destination, TransportMode.pt, elements, index, 0, 0,
+				new AttributesImpl());
+	}
+}
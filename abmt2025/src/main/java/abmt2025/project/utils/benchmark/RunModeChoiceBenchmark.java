@@ -0,0 +1,228 @@
+package abmt2025.project.utils.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+import org.eqasim.core.components.transit.EqasimTransitQSimModule;
+import org.eqasim.core.simulation.mode_choice.EqasimModeChoiceModule;
+import org.eqasim.switzerland.SwitzerlandConfigurator;
+import org.eqasim.switzerland.mode_choice.SwissModeChoiceModule;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.contrib.drt.routing.DrtRoute;
+import org.matsim.contrib.drt.routing.DrtRouteFactory;
+import org.matsim.contrib.drt.run.MultiModeDrtConfigGroup;
+import org.matsim.contrib.dvrp.run.DvrpConfigGroup;
+import org.matsim.contrib.dvrp.run.DvrpQSimComponents;
+import org.matsim.contribs.discrete_mode_choice.model.DiscreteModeChoiceModel;
+import org.matsim.core.config.CommandLine;
+import org.matsim.core.config.CommandLine.ConfigurationException;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.OutputDirectoryHierarchy.OverwriteFileSetting;
+import org.matsim.core.controler.events.StartupEvent;
+import org.matsim.core.controler.listener.StartupListener;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.io.IOUtils;
+
+import com.google.inject.Inject;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.name.Names;
+
+import abmt2025.project.config.AstraConfigurator_DRT;
+import abmt2025.project.mode_choice.AstraModule_DRT;
+import abmt2025.project.mode_choice.ModeChoiceRunner;
+import abmt2025.project.mode_choice.routing.DrtIntermodalFilterModule;
+import abmt2025.project.mode_choice.routing.DrtRouteCache;
+import abmt2025.project.travel_time.SmoothingTravelTimeModule;
+
+/**
+ * Measures the throughput of the Astra mode choice stack (predictors,
+ * estimators, constraints and routing of the alternatives) at different
+ * numbers of threads, without running the simulation loop.
+ *
+ * The controller is set up as in RunSimulation_DRT on a sample of the
+ * population of the given scenario. At startup, the mode choice model is run on
+ * the selected plans of the sample, a number of rounds per thread count, and
+ * trips per second, allocation rate and scaling efficiency relative to one
+ * thread are reported and written to mode_choice_benchmark.csv in the output
+ * directory. One thread is always measured first, as the reference for the
+ * efficiency. No iteration is run after startup.
+ *
+ * The DRT route cache is cleared before every round, including the warmup
+ * rounds, so that every round routes the same work and later thread counts do
+ * not profit from routes cached by earlier ones.
+ */
+public class RunModeChoiceBenchmark {
+	static public final String FILE_NAME = "mode_choice_benchmark.csv";
+
+	static public void main(String[] args) throws ConfigurationException {
+		CommandLine cmd = new CommandLine.Builder(args) //
+				.requireOptions("config-path", "output-directory") //
+				.allowOptions("persons", "threads", "rounds", "warmup-rounds", "seed") //
+				.allowPrefixes("mode-parameter", "cost-parameter") //
+				.build();
+
+		int numberOfPersons = cmd.getOption("persons").map(Integer::parseInt).orElse(2000);
+		int[] threadCounts = IntStream.concat(IntStream.of(1),
+				Arrays.stream(cmd.getOption("threads").orElse("1,2,4,8").split(","))
+						.mapToInt(value -> Integer.parseInt(value.trim())))
+				.distinct().toArray();
+		int numberOfRounds = cmd.getOption("rounds").map(Integer::parseInt).orElse(3);
+		int numberOfWarmupRounds = cmd.getOption("warmup-rounds").map(Integer::parseInt).orElse(1);
+		long seed = cmd.getOption("seed").map(Long::parseLong).orElse(0L);
+
+		AstraConfigurator_DRT astraConfigurator = new AstraConfigurator_DRT();
+		Config config = ConfigUtils.loadConfig(cmd.getOptionStrict("config-path"),
+				astraConfigurator.getConfigGroups());
+		AstraConfigurator_DRT.configure(config);
+		cmd.applyConfiguration(config);
+
+		config.controller().setOutputDirectory(cmd.getOptionStrict("output-directory"));
+		config.controller().setOverwriteFileSetting(OverwriteFileSetting.deleteDirectoryIfExists);
+		// With the last iteration before the first one, MATSim stops after startup
+		config.controller().setLastIteration(config.controller().getFirstIteration() - 1);
+
+		config.addModule(new DvrpConfigGroup());
+		config.addModule(new MultiModeDrtConfigGroup());
+
+		Scenario scenario = ScenarioUtils.createScenario(config);
+
+		SwitzerlandConfigurator switzerlandConfigurator = new SwitzerlandConfigurator();
+		switzerlandConfigurator.configureScenario(scenario);
+		ScenarioUtils.loadScenario(scenario);
+		switzerlandConfigurator.adjustScenario(scenario);
+		astraConfigurator.adjustScenario(scenario);
+
+		scenario.getPopulation().getFactory().getRouteFactories().setRouteFactory(DrtRoute.class,
+				new DrtRouteFactory());
+
+		// Keep a reproducible sample of the population
+		List<Id<Person>> personIds = new ArrayList<>(scenario.getPopulation().getPersons().keySet());
+		personIds.sort(Comparator.naturalOrder());
+
+		for (Id<Person> personId : personIds.subList(Math.min(numberOfPersons, personIds.size()), personIds.size())) {
+			scenario.getPopulation().removePerson(personId);
+		}
+
+		Controler controller = new Controler(scenario);
+		switzerlandConfigurator.configureController(controller);
+		controller.addOverridingModule(new EqasimModeChoiceModule());
+		controller.addOverridingModule(new SwissModeChoiceModule(cmd));
+		controller.addOverridingModule(new AstraModule_DRT(cmd));
+		controller.addOverridingModule(new SmoothingTravelTimeModule());
+		controller.addOverridingModule(new DrtIntermodalFilterModule());
+
+		controller.addOverridingModule(new AbstractModule() {
+			@Override
+			public void install() {
+				bind(TravelTime.class).annotatedWith(Names.named("drt"))
+						.to(Key.get(TravelTime.class, Names.named("dvrp_estimated")));
+			}
+		});
+
+		controller.configureQSimComponents(components -> {
+			DvrpQSimComponents.activateAllModes(MultiModeDrtConfigGroup.get(config)).configure(components);
+			EqasimTransitQSimModule.configure(components, config);
+		});
+
+		controller.addOverridingModule(new AbstractModule() {
+			@Override
+			public void install() {
+				addControlerListenerBinding().toInstance(new StartupListener() {
+					@Inject
+					Provider<DiscreteModeChoiceModel> modelProvider;
+
+					@Inject
+					OutputDirectoryHierarchy outputHierarchy;
+
+					@Inject
+					DrtRouteCache routeCache;
+
+					@Override
+					public void notifyStartup(StartupEvent event) {
+						List<Person> persons = new ArrayList<>(scenario.getPopulation().getPersons().values());
+						persons.sort(Comparator.comparing(Person::getId));
+
+						ModeChoiceRunner runner = new ModeChoiceRunner(modelProvider, seed);
+						run(runner, routeCache, persons, threadCounts, numberOfRounds, numberOfWarmupRounds,
+								outputHierarchy.getOutputFilename(FILE_NAME));
+					}
+				});
+			}
+		});
+
+		controller.run();
+	}
+
+	static private void run(ModeChoiceRunner runner, DrtRouteCache routeCache, List<Person> persons,
+			int[] threadCounts, int numberOfRounds, int numberOfWarmupRounds, String outputPath) {
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(outputPath)) {
+			writer.write("threads;trips;failures;runtime_ms;tripsPerSecond;efficiency;bytesPerTrip;allocation_MB_s\n");
+
+			double singleThreadTripsPerSecond = Double.NaN;
+
+			System.out.println(String.format("Persons: %d, rounds: %d", persons.size(), numberOfRounds));
+
+			for (int numberOfThreads : threadCounts) {
+				for (int round = 0; round < numberOfWarmupRounds; round++) {
+					// No iteration starts between the rounds, which would clear the cache
+					routeCache.clear();
+					runner.run(persons, numberOfThreads, false);
+				}
+
+				long numberOfTrips = 0;
+				long numberOfFailures = 0;
+				long runtime_ns = 0;
+				long allocatedBytes = 0;
+
+				for (int round = 0; round < numberOfRounds; round++) {
+					routeCache.clear();
+					ModeChoiceRunner.Result result = runner.run(persons, numberOfThreads, false);
+					numberOfTrips += result.getNumberOfTrips();
+					numberOfFailures += result.getNumberOfFailures();
+					runtime_ns += result.getRuntime_ns();
+					allocatedBytes += result.getAllocatedBytes();
+				}
+
+				double tripsPerSecond = 1e9 * numberOfTrips / runtime_ns;
+
+				if (numberOfThreads == 1) {
+					singleThreadTripsPerSecond = tripsPerSecond;
+				}
+
+				// Relative to perfect scaling of the single-threaded throughput
+				double efficiency = tripsPerSecond / (numberOfThreads * singleThreadTripsPerSecond);
+				double bytesPerTrip = (double) allocatedBytes / numberOfTrips;
+				double allocationRate_MB_s = 1e9 * allocatedBytes / runtime_ns / (1024.0 * 1024.0);
+
+				System.out.println(String.format(Locale.US,
+						"  %2d threads: %10.1f trips/s, efficiency %5.2f, %10.1f bytes/trip, %8.1f MB/s, %d failures",
+						numberOfThreads, tripsPerSecond, efficiency, bytesPerTrip, allocationRate_MB_s,
+						numberOfFailures));
+
+				writer.write(String.format(Locale.US, "%d;%d;%d;%.1f;%.2f;%.4f;%.1f;%.2f\n", numberOfThreads,
+						numberOfTrips, numberOfFailures, 1e-6 * runtime_ns, tripsPerSecond, efficiency, bytesPerTrip,
+						allocationRate_MB_s));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package abmt2025.project.utils.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.CommandLine;
+import org.matsim.core.config.CommandLine.ConfigurationException;
+import org.matsim.core.controler.events.AfterMobsimEvent;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.vehicles.Vehicle;
+
+import abmt2025.project.travel_time.SmoothingTravelTime;
+
+/**
+ * Compares the sequential and the parallel consolidation of
+ * {@link SmoothingTravelTime} on a synthetic network. Each iteration, a share of
+ * the links receives observations, and the time spent in notifyAfterMobsim is
+ * measured for both modes after a number of warmup iterations. The estimates
+ * of both instances are compared at the end to make sure that the modes agree.
+ */
+public class RunSmoothingTravelTimeBenchmark {
+	static public void main(String[] args) throws ConfigurationException {
+		CommandLine cmd = new CommandLine.Builder(args) //
+				.allowOptions("links", "observed-share", "iterations", "warmup-iterations", "threads", "seed") //
+				.build();
+
+		int numberOfLinks = cmd.getOption("links").map(Integer::parseInt).orElse(500000);
+		double observedShare = cmd.getOption("observed-share").map(Double::parseDouble).orElse(0.2);
+		int numberOfIterations = cmd.getOption("iterations").map(Integer::parseInt).orElse(10);
+		int numberOfWarmupIterations = cmd.getOption("warmup-iterations").map(Integer::parseInt).orElse(3);
+		int numberOfThreads = cmd.getOption("threads").map(Integer::parseInt)
+				.orElse(Runtime.getRuntime().availableProcessors());
+		long seed = cmd.getOption("seed").map(Long::parseLong).orElse(0L);
+
+		double startTime = 0.0;
+		double endTime = 30.0 * 3600.0;
+		double interval = 900.0;
+
+		Network network = createNetwork(numberOfLinks);
+		List<Link> links = new ArrayList<>(network.getLinks().values());
+		Id<Vehicle> vehicleId = Id.create("benchmark", Vehicle.class);
+
+		SmoothingTravelTime sequential = new SmoothingTravelTime(startTime, endTime, interval, 0.1, 0.1, true,
+				network, 0, 0, false);
+		SmoothingTravelTime parallel = new SmoothingTravelTime(startTime, endTime, interval, 0.1, 0.1, true,
+				network, numberOfThreads, 0, false);
+
+		Random random = new Random(seed);
+
+		long sequentialTime_ns = 0;
+		long parallelTime_ns = 0;
+
+		int totalIterations = numberOfWarmupIterations + numberOfIterations;
+
+		for (int iteration = 0; iteration < totalIterations; iteration++) {
+			for (Link link : links) {
+				if (random.nextDouble() < observedShare) {
+					double enterTime = random.nextDouble() * (endTime - startTime);
+					double leaveTime = enterTime + link.getLength() / link.getFreespeed() * (1.0 + random.nextDouble());
+
+					for (SmoothingTravelTime travelTime : List.of(sequential, parallel)) {
+						travelTime.handleEvent(new LinkEnterEvent(enterTime, vehicleId, link.getId()));
+						travelTime.handleEvent(new LinkLeaveEvent(leaveTime, vehicleId, link.getId()));
+					}
+				}
+			}
+
+			AfterMobsimEvent event = new AfterMobsimEvent(null, iteration, iteration == totalIterations - 1);
+			boolean measure = iteration >= numberOfWarmupIterations;
+
+			long sequentialStart = System.nanoTime();
+			sequential.notifyAfterMobsim(event);
+
+			if (measure) {
+				sequentialTime_ns += System.nanoTime() - sequentialStart;
+			}
+
+			long parallelStart = System.nanoTime();
+			parallel.notifyAfterMobsim(event);
+
+			if (measure) {
+				parallelTime_ns += System.nanoTime() - parallelStart;
+			}
+		}
+
+		long mismatches = 0;
+
+		for (Link link : links) {
+			for (double time = startTime; time <= endTime; time += interval) {
+				if (sequential.getLinkTravelTime(link, time, null, null) != parallel.getLinkTravelTime(link, time,
+						null, null)) {
+					mismatches++;
+				}
+			}
+		}
+
+		System.out.println(String.format("Links: %d, observed share: %.2f, iterations: %d (+%d warmup), threads: %d",
+				numberOfLinks, observedShare, numberOfIterations, numberOfWarmupIterations, numberOfThreads));
+		System.out.println(String.format("  Sequential consolidation: %.2f ms/iteration",
+				1e-6 * sequentialTime_ns / numberOfIterations));
+		System.out.println(String.format("  Parallel consolidation:   %.2f ms/iteration",
+				1e-6 * parallelTime_ns / numberOfIterations));
+		System.out.println(String.format("  Speedup: %.2fx", (double) sequentialTime_ns / parallelTime_ns));
+		System.out.println("  Mismatching estimates: " + mismatches);
+	}
+
+	static private Network createNetwork(int numberOfLinks) {
+		Network network = NetworkUtils.createNetwork();
+		Node previous = NetworkUtils.createAndAddNode(network, Id.createNodeId(0), new Coord(0.0, 0.0));
+
+		for (int i = 0; i < numberOfLinks; i++) {
+			Node next = NetworkUtils.createAndAddNode(network, Id.createNodeId(i + 1), new Coord(100.0 * (i + 1), 0.0));
+			NetworkUtils.createAndAddLink(network, Id.createLinkId(i), previous, next, 100.0 + (i % 10) * 50.0,
+					13.9, 1000.0, 1.0);
+			previous = next;
+		}
+
+		return network;
+	}
+}
@@ -0,0 +1,252 @@
+package abmt2025.project.utils.headway;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.router.LinkWrapperFacility;
+import org.matsim.core.utils.io.IOUtils;
+
+/**
+ * Bounded cache of headways by origin link, destination link and departure time
+ * bin, shared by all imputation threads.
+ *
+ * Household members and commuters often share origin and destination links and
+ * depart at similar times, so most trips can reuse the result of an earlier
+ * range query. On a miss, the headway is calculated for the center of the time
+ * bin, so the imputed value does not depend on which trip of a bin came first.
+ * Eviction is least-recently-used within each of the stripes of the cache.
+ *
+ * The cache can be written to and read from a CSV file with the columns
+ * originLinkId;destinationLinkId;departureTime;headway_min. Entries are only
+ * valid for the schedule and the interval they were calculated with, and
+ * entries that do not match the time bins of the cache are skipped on reading.
+ */
+public class HeadwayCache {
+	private static final Logger log = LogManager.getLogger(HeadwayCache.class);
+
+	private static final int NUMBER_OF_STRIPES = 16;
+
+	private final double timeBinSize;
+	private final List<Map<Key, Double>> stripes = new ArrayList<>(NUMBER_OF_STRIPES);
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public HeadwayCache(int maximumSize, double timeBinSize) {
+		this.timeBinSize = timeBinSize;
+
+		int stripeSize = Math.max(1, maximumSize / NUMBER_OF_STRIPES);
+
+		for (int i = 0; i < NUMBER_OF_STRIPES; i++) {
+			stripes.add(new LinkedHashMap<Key, Double>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+					if (size() > stripeSize) {
+						evictions.increment();
+						return true;
+					}
+
+					return false;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Creates the cache and fills it from the given file if it exists.
+	 */
+	static public HeadwayCache create(int maximumSize, double timeBinSize, File path) {
+		HeadwayCache cache = new HeadwayCache(maximumSize, timeBinSize);
+
+		if (path != null && path.exists()) {
+			cache.read(path);
+		}
+
+		return cache;
+	}
+
+	/**
+	 * Returns the cached headway for the trip, or calculates it with the given
+	 * calculator and caches it. Concurrent misses on the same key may both run the
+	 * calculator, they yield the same value.
+	 */
+	public double getHeadway_min(Link originLink, Link destinationLink, double departureTime,
+			HeadwayCalculator calculator) {
+		int timeBin = (int) Math.floor(departureTime / timeBinSize);
+		Key key = new Key(originLink.getId(), destinationLink.getId(), timeBin);
+
+		Map<Key, Double> stripe = getStripe(key);
+		Double headway_min;
+
+		synchronized (stripe) {
+			headway_min = stripe.get(key);
+		}
+
+		if (headway_min != null) {
+			hits.increment();
+			return headway_min;
+		}
+
+		misses.increment();
+		headway_min = calculator.calculateHeadway_min(new LinkWrapperFacility(originLink),
+				new LinkWrapperFacility(destinationLink), getBinCenter(timeBin));
+
+		synchronized (stripe) {
+			stripe.put(key, headway_min);
+		}
+
+		return headway_min;
+	}
+
+	private Map<Key, Double> getStripe(Key key) {
+		return stripes.get(Math.floorMod(key.hashCode(), NUMBER_OF_STRIPES));
+	}
+
+	private double getBinCenter(int timeBin) {
+		return (timeBin + 0.5) * timeBinSize;
+	}
+
+	public int size() {
+		int size = 0;
+
+		for (Map<Key, Double> stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+
+		return size;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public double getHitRate() {
+		long total = getHits() + getMisses();
+		return total > 0 ? (double) getHits() / total : 0.0;
+	}
+
+	public void logStatistics() {
+		long hitCount = hits.sum();
+		long missCount = misses.sum();
+		long total = hitCount + missCount;
+
+		log.info("Headway cache: {} requests, {} hits ({}%), {} evictions, {} entries", total, hitCount,
+				total > 0 ? String.format("%.1f", 100.0 * hitCount / total) : "0.0", evictions.sum(), size());
+	}
+
+	public void write(File path) {
+		int numberOfEntries = 0;
+
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(path.toString())) {
+			writer.write("originLinkId;destinationLinkId;departureTime;headway_min\n");
+
+			for (Map<Key, Double> stripe : stripes) {
+				List<Map.Entry<Key, Double>> entries;
+
+				synchronized (stripe) {
+					entries = new ArrayList<>(stripe.entrySet());
+				}
+
+				for (Map.Entry<Key, Double> entry : entries) {
+					Key key = entry.getKey();
+					writer.write(key.originLinkId + ";" + key.destinationLinkId + ";" + getBinCenter(key.timeBin) + ";"
+							+ entry.getValue() + "\n");
+					numberOfEntries++;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		log.info("Wrote {} headways to {}", numberOfEntries, path);
+	}
+
+	public void read(File path) {
+		int numberOfEntries = 0;
+		int numberOfSkippedEntries = 0;
+
+		try (BufferedReader reader = IOUtils.getBufferedReader(path.toString())) {
+			String line = reader.readLine();
+
+			if (line == null || !line.equals("originLinkId;destinationLinkId;departureTime;headway_min")) {
+				throw new IllegalStateException("Not a headway cache file: " + path);
+			}
+
+			while ((line = reader.readLine()) != null) {
+				String[] values = line.split(";");
+				double departureTime = Double.parseDouble(values[2]);
+				int timeBin = (int) Math.floor(departureTime / timeBinSize);
+
+				if (getBinCenter(timeBin) != departureTime) {
+					// Calculated with another time bin size
+					numberOfSkippedEntries++;
+					continue;
+				}
+
+				Key key = new Key(Id.createLinkId(values[0]), Id.createLinkId(values[1]), timeBin);
+				Map<Key, Double> stripe = getStripe(key);
+
+				synchronized (stripe) {
+					stripe.put(key, Double.parseDouble(values[3]));
+				}
+
+				numberOfEntries++;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		log.info("Read {} headways from {} ({} skipped for other time bins)", numberOfEntries, path,
+				numberOfSkippedEntries);
+	}
+
+	private static final class Key {
+		private final Id<Link> originLinkId;
+		private final Id<Link> destinationLinkId;
+		private final int timeBin;
+		private final int hash;
+
+		Key(Id<Link> originLinkId, Id<Link> destinationLinkId, int timeBin) {
+			this.originLinkId = originLinkId;
+			this.destinationLinkId = destinationLinkId;
+			this.timeBin = timeBin;
+			this.hash = Objects.hash(originLinkId, destinationLinkId, timeBin);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+
+			Key key = (Key) other;
+			return timeBin == key.timeBin && originLinkId.equals(key.originLinkId)
+					&& destinationLinkId.equals(key.destinationLinkId);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
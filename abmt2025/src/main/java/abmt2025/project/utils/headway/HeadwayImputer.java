@@ -1,9 +1,15 @@
 package abmt2025.project.utils.headway;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.LongStream;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.eqasim.core.misc.ParallelProgress;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
@@ -18,7 +24,31 @@ import org.matsim.facilities.Facility;
 
 import com.google.inject.Provider;
 
+/**
+ * Imputes the headway_min attribute of the origin activities of all trips.
+ *
+ * The trips to impute are collected first and then processed in a fork/join
+ * pool at trip granularity, so that persons with many trips do not stall a
+ * worker and idle workers steal work from busy ones. Every worker thread has its
+ * own {@link HeadwayCalculator}. The range of trips is split until it is
+ * smaller than a batch size that depends on the number of trips and threads,
+ * bounded by the configured batch size.
+ *
+ * Optionally, headways are looked up in a {@link HeadwayCache} shared by all
+ * workers, which is written to the given path after imputation so that the next
+ * run can start from it.
+ *
+ * In zone matrix mode, the cells of the {@link HeadwayMatrix} that are needed by
+ * the trips and not known yet are calculated first, and trips between two
+ * different zones get the headway of their cell. The remaining trips are routed
+ * individually. The matrix is written to the given path when cells were added.
+ */
 public class HeadwayImputer {
+	private static final Logger log = LogManager.getLogger(HeadwayImputer.class);
+
+	// Target number of batches per thread, for load balancing
+	static private final int BATCHES_PER_THREAD = 16;
+
 	private final int numberOfThreads;
 	private final int batchSize;
 	private final boolean replaceExistingHeadways;
@@ -26,84 +56,198 @@ public class HeadwayImputer {
 
 	private final Provider<HeadwayCalculator> calculatorProvider;
 
+	private final HeadwayCache cache;
+	private final File cachePath;
+
+	private final HeadwayMatrix matrix;
+	private final File matrixPath;
+
 	public HeadwayImputer(int numberOfThreads, int batchSize, boolean replaceExistingHeadways,
 						  Network network, Provider<HeadwayCalculator> calculatorProvider) {
+		this(numberOfThreads, batchSize, replaceExistingHeadways, network, calculatorProvider, null, null);
+	}
+
+	public HeadwayImputer(int numberOfThreads, int batchSize, boolean replaceExistingHeadways,
+						  Network network, Provider<HeadwayCalculator> calculatorProvider, HeadwayCache cache,
+						  File cachePath) {
+		this(numberOfThreads, batchSize, replaceExistingHeadways, network, calculatorProvider, cache, cachePath,
+				null, null);
+	}
+
+	public HeadwayImputer(int numberOfThreads, int batchSize, boolean replaceExistingHeadways,
+						  Network network, Provider<HeadwayCalculator> calculatorProvider, HeadwayCache cache,
+						  File cachePath, HeadwayMatrix matrix, File matrixPath) {
 		this.numberOfThreads = numberOfThreads;
 		this.batchSize = batchSize;
 		this.network = network;
 		this.calculatorProvider = calculatorProvider;
 		this.replaceExistingHeadways = replaceExistingHeadways;
+		this.cache = cache;
+		this.cachePath = cachePath;
+		this.matrix = matrix;
+		this.matrixPath = matrixPath;
 	}
 
 	public void run(Population population) throws InterruptedException {
-		List<Thread> threads = new LinkedList<>();
+		List<HeadwayTask> tasks = new ArrayList<>();
+
+		for (Person person : population.getPersons().values()) {
+			for (Plan plan : person.getPlans()) {
+				for (Trip trip : TripStructureUtils.getTrips(plan)) {
+					Activity originActivity = trip.getOriginActivity();
+
+					if (originActivity.getAttributes().getAttribute("headway_min") == null
+							|| replaceExistingHeadways) {
+						tasks.add(new HeadwayTask(originActivity,
+								network.getLinks().get(originActivity.getLinkId()),
+								network.getLinks().get(trip.getDestinationActivity().getLinkId()),
+								originActivity.getEndTime().seconds()));
+					}
+				}
+			}
+		}
 
-		Iterator<? extends Person> personIterator = population.getPersons().values().iterator();
-		ParallelProgress progress = new ParallelProgress("Imputing headway ...", population.getPersons().size());
+		run(tasks);
+	}
 
-		for (int i = 0; i < numberOfThreads; i++) {
-			Thread thread = new Thread(new Worker(personIterator, progress));
-			threads.add(thread);
-		}
+	void run(List<HeadwayTask> tasks) throws InterruptedException {
+		int leafSize = Math.max(1, Math.min(batchSize, tasks.size() / (numberOfThreads * BATCHES_PER_THREAD)));
+
+		ThreadLocal<HeadwayCalculator> calculators = ThreadLocal.withInitial(calculatorProvider::get);
+		ParallelProgress progress = new ParallelProgress("Imputing headway ...", tasks.size());
+		ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
 
-		threads.forEach(Thread::start);
+		long startTime = System.nanoTime();
 		progress.start();
 
-		for (Thread thread : threads) {
-			thread.join();
+		try {
+			if (matrix != null) {
+				fillMatrix(tasks, pool, calculators);
+			}
+
+			pool.invoke(new ImputationAction(tasks, 0, tasks.size(), leafSize, calculators, cache, matrix,
+					progress));
+		} finally {
+			pool.shutdown();
+			progress.close();
 		}
 
-		progress.close();
-	}
+		double runtime_s = 1e-9 * (System.nanoTime() - startTime);
 
-	private class Worker implements Runnable {
-		private final Iterator<? extends Person> personIterator;
-		private final ParallelProgress progress;
+		log.info("Imputed headways for {} trips in {} s ({} trips/s, {} threads, batch size {})", tasks.size(),
+				String.format("%.1f", runtime_s), String.format("%.1f", tasks.size() / Math.max(runtime_s, 1e-9)),
+				numberOfThreads, leafSize);
 
-		Worker(Iterator<? extends Person> personIterator, ParallelProgress progress) {
-			this.personIterator = personIterator;
-			this.progress = progress;
+		if (cache != null) {
+			cache.logStatistics();
+
+			if (cachePath != null) {
+				cache.write(cachePath);
+			}
 		}
+	}
 
-		@Override
-		public void run() {
-			List<Person> localTasks = new LinkedList<>();
-			HeadwayCalculator calculator = calculatorProvider.get();
+	private void fillMatrix(List<HeadwayTask> tasks, ForkJoinPool pool, ThreadLocal<HeadwayCalculator> calculators)
+			throws InterruptedException {
+		long startTime = System.nanoTime();
+
+		long[] cells = tasks.stream() //
+				.mapToLong(task -> matrix.getCell(task.originLink.getId(), task.destinationLink.getId(),
+						task.departureTime)) //
+				.filter(cell -> cell >= 0 && !matrix.isCalculated(cell)) //
+				.distinct().toArray();
+
+		try {
+			pool.submit(
+					() -> LongStream.of(cells).parallel().forEach(cell -> matrix.calculate(cell, calculators.get())))
+					.get();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e);
+		}
 
-			do {
-				localTasks.clear();
+		log.info("Calculated {} headway matrix cells for {} trips between {} zones in {} s", cells.length,
+				tasks.size(), matrix.getZones().getNumberOfZones(),
+				String.format("%.1f", 1e-9 * (System.nanoTime() - startTime)));
 
-				synchronized (personIterator) {
-					while (personIterator.hasNext() && localTasks.size() < batchSize) {
-						localTasks.add(personIterator.next());
-					}
-				}
+		if (matrixPath != null && cells.length > 0) {
+			matrix.write(matrixPath);
+		}
+	}
 
-				for (Person person : localTasks) {
-					for (Plan plan : person.getPlans()) {
-						for (Trip trip : TripStructureUtils.getTrips(plan)) {
-							Activity originActivity = trip.getOriginActivity();
+	static class HeadwayTask {
+		final Activity originActivity;
+		final Link originLink;
+		final Link destinationLink;
+		final double departureTime;
+
+		HeadwayTask(Activity originActivity, Link originLink, Link destinationLink, double departureTime) {
+			this.originActivity = originActivity;
+			this.originLink = originLink;
+			this.destinationLink = destinationLink;
+			this.departureTime = departureTime;
+		}
+	}
 
-							if (originActivity.getAttributes().getAttribute("headway_min") == null
-									|| replaceExistingHeadways) {
-								Link originLink = network.getLinks().get(trip.getOriginActivity().getLinkId());
-								Link destinationLink = network.getLinks()
-										.get(trip.getDestinationActivity().getLinkId());
+	static private class ImputationAction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
 
-								Facility originFacility = new LinkWrapperFacility(originLink);
-								Facility destinationFacility = new LinkWrapperFacility(destinationLink);
+		private final List<HeadwayTask> tasks;
+		private final int start;
+		private final int end;
+		private final int leafSize;
+		private final ThreadLocal<HeadwayCalculator> calculators;
+		private final HeadwayCache cache;
+		private final HeadwayMatrix matrix;
+		private final ParallelProgress progress;
 
-								double headway_min = calculator.calculateHeadway_min(originFacility,
-										destinationFacility, trip.getOriginActivity().getEndTime().seconds());
+		ImputationAction(List<HeadwayTask> tasks, int start, int end, int leafSize,
+				ThreadLocal<HeadwayCalculator> calculators, HeadwayCache cache, HeadwayMatrix matrix,
+				ParallelProgress progress) {
+			this.tasks = tasks;
+			this.start = start;
+			this.end = end;
+			this.leafSize = leafSize;
+			this.calculators = calculators;
+			this.cache = cache;
+			this.matrix = matrix;
+			this.progress = progress;
+		}
 
-								trip.getOriginActivity().getAttributes().putAttribute("headway_min", headway_min);
-							}
-						}
-					}
+		@Override
+		protected void compute() {
+			if (end - start > leafSize) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new ImputationAction(tasks, start, middle, leafSize, calculators, cache, matrix, progress),
+						new ImputationAction(tasks, middle, end, leafSize, calculators, cache, matrix, progress));
+				return;
+			}
+
+			HeadwayCalculator calculator = calculators.get();
+
+			for (int i = start; i < end; i++) {
+				HeadwayTask task = tasks.get(i);
+
+				double headway_min;
+				long cell = matrix == null ? -1
+						: matrix.getCell(task.originLink.getId(), task.destinationLink.getId(), task.departureTime);
+
+				if (cell >= 0) {
+					headway_min = matrix.getHeadway_min(cell);
+				} else if (cache != null) {
+					headway_min = cache.getHeadway_min(task.originLink, task.destinationLink, task.departureTime,
+							calculator);
+				} else {
+					Facility originFacility = new LinkWrapperFacility(task.originLink);
+					Facility destinationFacility = new LinkWrapperFacility(task.destinationLink);
+
+					headway_min = calculator.calculateHeadway_min(originFacility, destinationFacility,
+							task.departureTime);
 				}
 
-				progress.update(localTasks.size());
-			} while (localTasks.size() > 0);
+				task.originActivity.getAttributes().putAttribute("headway_min", headway_min);
+			}
+
+			progress.update(end - start);
 		}
 	}
 }
@@ -4,6 +4,8 @@ package abmt2025.project.utils.headway;
 // import abmt2025.project.utils.headway.HeadwayImputer; 
 
 
+import java.io.File;
+
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.router.TripRouter;
@@ -19,11 +21,50 @@ public class HeadwayImputerModule extends AbstractModule {
 	private final boolean replaceExistingHeadways;
 	private final double interval;
 
+	private final int cacheSize;
+	private final double cacheTimeBinSize;
+	private final String cachePath;
+
+	private double zoneGridSize = 0.0;
+	private String zoneShapeFilePath = null;
+	private String zoneIdAttribute = null;
+	private double matrixTimeBinSize = 0.0;
+	private String matrixPath = null;
+
 	public HeadwayImputerModule(int numberOfThreads, int batchSize, boolean replaceExistingHeadways, double interval) {
+		this(numberOfThreads, batchSize, replaceExistingHeadways, interval, 0, 300.0, null);
+	}
+
+	/**
+	 * @param cacheSize        maximum number of cached headways, 0 to disable the
+	 *                         cache
+	 * @param cacheTimeBinSize size of the departure time bins of the cache [s]
+	 * @param cachePath        file the cache is read from and written to, may be
+	 *                         null
+	 */
+	public HeadwayImputerModule(int numberOfThreads, int batchSize, boolean replaceExistingHeadways, double interval,
+			int cacheSize, double cacheTimeBinSize, String cachePath) {
 		this.numberOfThreads = numberOfThreads;
 		this.batchSize = batchSize;
 		this.replaceExistingHeadways = replaceExistingHeadways;
 		this.interval = interval;
+		this.cacheSize = cacheSize;
+		this.cacheTimeBinSize = cacheTimeBinSize;
+		this.cachePath = cachePath;
+	}
+
+	/**
+	 * Enables the zone matrix mode, see {@link HeadwayMatrix#create}. The matrix is
+	 * read from and written to matrixPath if not null.
+	 */
+	public HeadwayImputerModule useZoneMatrix(double zoneGridSize, String zoneShapeFilePath, String zoneIdAttribute,
+			double matrixTimeBinSize, String matrixPath) {
+		this.zoneGridSize = zoneGridSize;
+		this.zoneShapeFilePath = zoneShapeFilePath;
+		this.zoneIdAttribute = zoneIdAttribute;
+		this.matrixTimeBinSize = matrixTimeBinSize;
+		this.matrixPath = matrixPath;
+		return this;
 	}
 
 	@Override
@@ -38,7 +79,14 @@ public class HeadwayImputerModule extends AbstractModule {
 	@Provides
 	public HeadwayImputer provideHeadwayImputer(Provider<HeadwayCalculator> calculatorProvider, Network network,
 												TripRouter tripRouter) {
+		File cacheFile = cachePath == null ? null : new File(cachePath);
+		HeadwayCache cache = cacheSize > 0 ? HeadwayCache.create(cacheSize, cacheTimeBinSize, cacheFile) : null;
+
+		File matrixFile = matrixPath == null ? null : new File(matrixPath);
+		HeadwayMatrix matrix = matrixTimeBinSize > 0.0 ? HeadwayMatrix.create(network, zoneGridSize,
+				zoneShapeFilePath, zoneIdAttribute, matrixTimeBinSize, matrixFile) : null;
+
 		return new HeadwayImputer(numberOfThreads, batchSize, replaceExistingHeadways,
-				network, calculatorProvider);
+				network, calculatorProvider, cache, cacheFile, matrix, matrixFile);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,246 @@
+package abmt2025.project.utils.headway;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.router.LinkWrapperFacility;
+
+/**
+ * Headways by origin zone, destination zone and departure time bin.
+ *
+ * The headway of a cell is calculated between the representative links of the
+ * two zones at the center of the time bin, so all trips of a cell share one
+ * range query. Cells are filled on demand by {@link HeadwayImputer}; cells that
+ * have not been calculated are NaN. Trips within one zone, trips from or to
+ * links outside of all zones and trips outside of the time bins are not
+ * covered by the matrix.
+ *
+ * Only the zone pairs that trips actually use are stored, each with one array
+ * over the time bins, so memory grows with the number of used pairs and not
+ * with the square of the number of zones.
+ *
+ * The matrix can be stored in a compact binary file: a fixed-size header
+ * followed by one record per stored zone pair, consisting of the origin and
+ * destination zone and the headways of all time bins as big-endian floats. The
+ * header stores the number of zones, time bins and records, the bin size and a
+ * hash over the zone ids and representative links, so that a file is only used
+ * with the zones it was calculated for. After changes to the schedule, the file
+ * has to be deleted.
+ */
+public class HeadwayMatrix {
+	private static final Logger log = LogManager.getLogger(HeadwayMatrix.class);
+
+	static private final int MAGIC = 0x4153484D; // "ASHM"
+	static private final int VERSION = 2;
+
+	private final HeadwayZones zones;
+	private final double timeBinSize;
+	private final int numberOfTimeBins;
+	private final Map<Long, float[]> values = new ConcurrentHashMap<>();
+
+	public HeadwayMatrix(HeadwayZones zones, double timeBinSize, int numberOfTimeBins) {
+		this.zones = zones;
+		this.timeBinSize = timeBinSize;
+		this.numberOfTimeBins = numberOfTimeBins;
+	}
+
+	/**
+	 * Creates a matrix over 30 hours in bins of the given size [s]. Zones are the
+	 * features of the shape file if it is given, otherwise the cells of a grid of
+	 * the given size [m]. Known cells are read from path if the file exists.
+	 */
+	static public HeadwayMatrix create(Network network, double zoneGridSize, String zoneShapeFilePath,
+			String zoneIdAttribute, double timeBinSize, File path) {
+		HeadwayZones zones = zoneShapeFilePath != null
+				? HeadwayZones.createFromShapeFile(network, zoneShapeFilePath, zoneIdAttribute)
+				: HeadwayZones.createGrid(network, zoneGridSize);
+
+		HeadwayMatrix matrix = new HeadwayMatrix(zones, timeBinSize, (int) Math.ceil(30.0 * 3600.0 / timeBinSize));
+
+		if (path != null && path.exists()) {
+			matrix.read(path);
+		}
+
+		return matrix;
+	}
+
+	public HeadwayZones getZones() {
+		return zones;
+	}
+
+	/**
+	 * Returns the cell of the trip, or -1 if the trip is not covered by the matrix.
+	 */
+	public long getCell(Id<Link> originLinkId, Id<Link> destinationLinkId, double departureTime) {
+		int originZone = zones.getZone(originLinkId);
+		int destinationZone = zones.getZone(destinationLinkId);
+		int timeBin = (int) Math.floor(departureTime / timeBinSize);
+
+		if (originZone == HeadwayZones.NO_ZONE || destinationZone == HeadwayZones.NO_ZONE
+				|| originZone == destinationZone || timeBin < 0 || timeBin >= numberOfTimeBins) {
+			return -1;
+		}
+
+		return getPair(originZone, destinationZone) * numberOfTimeBins + timeBin;
+	}
+
+	public boolean isCalculated(long cell) {
+		float[] pairValues = values.get(cell / numberOfTimeBins);
+		return pairValues != null && !Float.isNaN(pairValues[(int) (cell % numberOfTimeBins)]);
+	}
+
+	public double getHeadway_min(long cell) {
+		float[] pairValues = values.get(cell / numberOfTimeBins);
+		return pairValues == null ? Double.NaN : pairValues[(int) (cell % numberOfTimeBins)];
+	}
+
+	/**
+	 * Calculates the headway of the cell. Different cells may be calculated
+	 * concurrently.
+	 */
+	public void calculate(long cell, HeadwayCalculator calculator) {
+		long pair = cell / numberOfTimeBins;
+		int timeBin = (int) (cell % numberOfTimeBins);
+		int originZone = (int) (pair / zones.getNumberOfZones());
+		int destinationZone = (int) (pair % zones.getNumberOfZones());
+
+		float headway_min = (float) calculator.calculateHeadway_min(
+				new LinkWrapperFacility(zones.getRepresentativeLink(originZone)),
+				new LinkWrapperFacility(zones.getRepresentativeLink(destinationZone)),
+				(timeBin + 0.5) * timeBinSize);
+
+		values.computeIfAbsent(pair, p -> createPairValues())[timeBin] = headway_min;
+	}
+
+	private long getPair(int originZone, int destinationZone) {
+		return (long) originZone * zones.getNumberOfZones() + destinationZone;
+	}
+
+	private float[] createPairValues() {
+		float[] pairValues = new float[numberOfTimeBins];
+		Arrays.fill(pairValues, Float.NaN);
+		return pairValues;
+	}
+
+	public void write(File path) {
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(path)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(zones.getNumberOfZones());
+			output.writeInt(numberOfTimeBins);
+			output.writeDouble(timeBinSize);
+			output.writeLong(hashZones(zones));
+			output.writeInt(values.size());
+
+			for (Map.Entry<Long, float[]> entry : values.entrySet()) {
+				output.writeInt((int) (entry.getKey() / zones.getNumberOfZones()));
+				output.writeInt((int) (entry.getKey() % zones.getNumberOfZones()));
+
+				for (float value : entry.getValue()) {
+					output.writeFloat(value);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		log.info("Wrote headway matrix with {} zone pairs, {} zones and {} time bins to {}", values.size(),
+				zones.getNumberOfZones(), numberOfTimeBins, path);
+	}
+
+	public void read(File path) {
+		int numberOfCalculatedCells = 0;
+		int numberOfPairs;
+
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+			if (input.readInt() != MAGIC) {
+				throw new IllegalStateException("Not a headway matrix file: " + path);
+			}
+
+			int version = input.readInt();
+
+			if (version != VERSION) {
+				throw new IllegalStateException("Unsupported headway matrix version " + version + ": " + path);
+			}
+
+			int fileZones = input.readInt();
+			int fileTimeBins = input.readInt();
+			double fileTimeBinSize = input.readDouble();
+			long fileHash = input.readLong();
+
+			if (fileZones != zones.getNumberOfZones() || fileHash != hashZones(zones)) {
+				throw new IllegalStateException(String.format(
+						"Headway matrix in %s was calculated for different zones (%d zones in file, %d configured)",
+						path, fileZones, zones.getNumberOfZones()));
+			}
+
+			if (fileTimeBins != numberOfTimeBins || fileTimeBinSize != timeBinSize) {
+				throw new IllegalStateException(String.format(
+						"Headway matrix in %s uses a different time binning (%d bins of %.0fs in file, %d bins of %.0fs configured)",
+						path, fileTimeBins, fileTimeBinSize, numberOfTimeBins, timeBinSize));
+			}
+
+			numberOfPairs = input.readInt();
+
+			for (int i = 0; i < numberOfPairs; i++) {
+				int originZone = input.readInt();
+				int destinationZone = input.readInt();
+				float[] pairValues = new float[numberOfTimeBins];
+
+				for (int timeBin = 0; timeBin < numberOfTimeBins; timeBin++) {
+					pairValues[timeBin] = input.readFloat();
+
+					if (!Float.isNaN(pairValues[timeBin])) {
+						numberOfCalculatedCells++;
+					}
+				}
+
+				values.put(getPair(originZone, destinationZone), pairValues);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		log.info("Read headway matrix with {} calculated cells of {} zone pairs from {}", numberOfCalculatedCells,
+				numberOfPairs, path);
+	}
+
+	/**
+	 * 64-bit FNV-1a hash over the zone ids and representative links.
+	 */
+	static long hashZones(HeadwayZones zones) {
+		long hash = 0xcbf29ce484222325L;
+
+		for (int zone = 0; zone < zones.getNumberOfZones(); zone++) {
+			String value = zones.getZoneId(zone) + "@" + zones.getRepresentativeLink(zone).getId();
+
+			for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+				hash ^= b & 0xff;
+				hash *= 0x100000001b3L;
+			}
+
+			// Separator, so that ids cannot shift into each other
+			hash ^= 0xff;
+			hash *= 0x100000001b3L;
+		}
+
+		return hash;
+	}
+}
@@ -0,0 +1,112 @@
+package abmt2025.project.utils.headway;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.Config;
+import org.matsim.core.controler.events.BeforeMobsimEvent;
+import org.matsim.core.controler.listener.BeforeMobsimListener;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.router.TripStructureUtils.Trip;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+import abmt2025.project.config.AstraConfigGroup;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptor;
+
+/**
+ * Keeps the headway_min attributes of the origin activities up to date while
+ * the simulation runs, enabled by updateHeadways in the astra config group.
+ *
+ * Next to the headway, the departure time it was calculated for is stored in
+ * the headway_departure_time attribute. After replanning, the headways of all
+ * trips whose departure time moved by more than headwayUpdateTolerance seconds,
+ * and of all trips without a headway, are calculated anew in parallel with the
+ * {@link HeadwayImputer}, so that the predictors and constraints of the next
+ * replanning see current values. Headways from the input population without a
+ * recorded departure time are taken as calculated for the current one.
+ */
+public class HeadwayUpdateListener implements BeforeMobsimListener {
+	private static final Logger log = LogManager.getLogger(HeadwayUpdateListener.class);
+
+	static public final String DEPARTURE_TIME_ATTRIBUTE = "headway_departure_time";
+
+	static private final int BATCH_SIZE = 100;
+
+	private final Population population;
+	private final Network network;
+	private final HeadwayImputer imputer;
+	private final double tolerance;
+
+	@Inject
+	public HeadwayUpdateListener(Population population, Network network, Provider<SwissRailRaptor> raptorProvider,
+			Config config) {
+		AstraConfigGroup astraConfig = AstraConfigGroup.get(config);
+		double interval = astraConfig.getHeadwayInterval();
+
+		this.population = population;
+		this.network = network;
+		this.tolerance = astraConfig.getHeadwayUpdateTolerance();
+
+		// Every worker gets its own router, SwissRailRaptor is not thread-safe
+		this.imputer = new HeadwayImputer(config.global().getNumberOfThreads(), BATCH_SIZE, true, network,
+				() -> new HeadwayCalculator(raptorProvider.get(), interval, interval));
+	}
+
+	@Override
+	public void notifyBeforeMobsim(BeforeMobsimEvent event) {
+		List<HeadwayImputer.HeadwayTask> tasks = new ArrayList<>();
+		int numberOfTrips = 0;
+
+		for (Person person : population.getPersons().values()) {
+			for (Plan plan : person.getPlans()) {
+				for (Trip trip : TripStructureUtils.getTrips(plan)) {
+					Activity originActivity = trip.getOriginActivity();
+
+					if (originActivity.getEndTime().isUndefined()) {
+						continue;
+					}
+
+					numberOfTrips++;
+
+					double departureTime = originActivity.getEndTime().seconds();
+					Object headway = originActivity.getAttributes().getAttribute("headway_min");
+					Object recordedDepartureTime = originActivity.getAttributes().getAttribute(DEPARTURE_TIME_ATTRIBUTE);
+
+					if (headway != null && recordedDepartureTime == null) {
+						originActivity.getAttributes().putAttribute(DEPARTURE_TIME_ATTRIBUTE, departureTime);
+					} else if (headway == null
+							|| Math.abs((Double) recordedDepartureTime - departureTime) > tolerance) {
+						tasks.add(new HeadwayImputer.HeadwayTask(originActivity,
+								network.getLinks().get(originActivity.getLinkId()),
+								network.getLinks().get(trip.getDestinationActivity().getLinkId()), departureTime));
+					}
+				}
+			}
+		}
+
+		if (!tasks.isEmpty()) {
+			try {
+				imputer.run(tasks);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+
+			for (HeadwayImputer.HeadwayTask task : tasks) {
+				task.originActivity.getAttributes().putAttribute(DEPARTURE_TIME_ATTRIBUTE, task.departureTime);
+			}
+		}
+
+		log.info("Updated headways of {} out of {} trips in iteration {}", tasks.size(), numberOfTrips,
+				event.getIteration());
+	}
+}
@@ -0,0 +1,213 @@
+package abmt2025.project.utils.headway;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Location;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.utils.gis.ShapeFileReader;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Assignment of network links to the zones of a {@link HeadwayMatrix}.
+ *
+ * Zones are either the cells of a square grid or the features of a shape file
+ * (for instance municipalities). Every zone has a representative link, the link
+ * closest to the mean coordinate of the links in the zone, from and to which
+ * the headways of the zone are calculated. Links are looked up by
+ * {@link Id#index()}; links outside of all zones belong to no zone.
+ */
+public class HeadwayZones {
+	private static final Logger log = LogManager.getLogger(HeadwayZones.class);
+
+	static public final int NO_ZONE = -1;
+
+	private final List<String> zoneIds;
+	private final List<Link> representativeLinks;
+	private final int[] zoneByLinkIndex;
+
+	private HeadwayZones(List<String> zoneIds, List<Link> representativeLinks, int[] zoneByLinkIndex) {
+		this.zoneIds = zoneIds;
+		this.representativeLinks = representativeLinks;
+		this.zoneByLinkIndex = zoneByLinkIndex;
+	}
+
+	public int getNumberOfZones() {
+		return zoneIds.size();
+	}
+
+	public String getZoneId(int zone) {
+		return zoneIds.get(zone);
+	}
+
+	public Link getRepresentativeLink(int zone) {
+		return representativeLinks.get(zone);
+	}
+
+	public int getZone(Id<Link> linkId) {
+		int index = linkId.index();
+		return index < zoneByLinkIndex.length ? zoneByLinkIndex[index] : NO_ZONE;
+	}
+
+	/**
+	 * Zones of a square grid with the given cell size. Only cells that contain at
+	 * least one link are zones, they are named by their column and row.
+	 */
+	static public HeadwayZones createGrid(Network network, double cellSize) {
+		Map<String, Integer> zoneIndices = new HashMap<>();
+		List<String> zoneIds = new ArrayList<>();
+		int[] zoneByLinkIndex = createZoneByLinkIndex();
+
+		for (Link link : network.getLinks().values()) {
+			Coord coord = link.getCoord();
+			String zoneId = (long) Math.floor(coord.getX() / cellSize) + ":" + (long) Math.floor(coord.getY() / cellSize);
+
+			Integer zone = zoneIndices.get(zoneId);
+
+			if (zone == null) {
+				zone = zoneIds.size();
+				zoneIndices.put(zoneId, zone);
+				zoneIds.add(zoneId);
+			}
+
+			zoneByLinkIndex[link.getId().index()] = zone;
+		}
+
+		log.info("Created {} grid zones with cell size {} m", zoneIds.size(), cellSize);
+		return create(network, zoneIds, zoneByLinkIndex);
+	}
+
+	/**
+	 * Zones of the features of a shape file, named by the given attribute or by
+	 * the position of the feature in the file if the attribute is null. Features
+	 * without links are dropped.
+	 */
+	static public HeadwayZones createFromShapeFile(Network network, String shapeFilePath, String idAttribute) {
+		Collection<SimpleFeature> features = ShapeFileReader.getAllFeatures(shapeFilePath);
+
+		List<String> featureIds = new ArrayList<>();
+		STRtree index = new STRtree();
+
+		for (SimpleFeature feature : features) {
+			Geometry geometry = (Geometry) feature.getDefaultGeometry();
+
+			if (geometry != null) {
+				int featureIndex = featureIds.size();
+				featureIds.add(idAttribute == null ? String.valueOf(featureIndex)
+						: String.valueOf(feature.getAttribute(idAttribute)));
+				index.insert(geometry.getEnvelopeInternal(),
+						new ZoneGeometry(featureIndex, new IndexedPointInAreaLocator(geometry)));
+			}
+		}
+
+		index.build();
+
+		int[] featureByLinkIndex = createZoneByLinkIndex();
+		boolean[] used = new boolean[featureIds.size()];
+
+		for (Link link : network.getLinks().values()) {
+			Coordinate coordinate = new Coordinate(link.getCoord().getX(), link.getCoord().getY());
+
+			for (Object item : index.query(new Envelope(coordinate))) {
+				ZoneGeometry zone = (ZoneGeometry) item;
+
+				if (zone.locator.locate(coordinate) != Location.EXTERIOR) {
+					featureByLinkIndex[link.getId().index()] = zone.index;
+					used[zone.index] = true;
+					break;
+				}
+			}
+		}
+
+		// Renumber, so that only features with links are zones
+		int[] zoneByFeature = new int[featureIds.size()];
+		List<String> zoneIds = new ArrayList<>();
+
+		for (int feature = 0; feature < featureIds.size(); feature++) {
+			if (used[feature]) {
+				zoneByFeature[feature] = zoneIds.size();
+				zoneIds.add(featureIds.get(feature));
+			}
+		}
+
+		int[] zoneByLinkIndex = createZoneByLinkIndex();
+
+		for (int i = 0; i < zoneByLinkIndex.length; i++) {
+			if (featureByLinkIndex[i] != NO_ZONE) {
+				zoneByLinkIndex[i] = zoneByFeature[featureByLinkIndex[i]];
+			}
+		}
+
+		log.info("Created {} zones from {} features of {}", zoneIds.size(), featureIds.size(), shapeFilePath);
+		return create(network, zoneIds, zoneByLinkIndex);
+	}
+
+	static private int[] createZoneByLinkIndex() {
+		int[] zoneByLinkIndex = new int[Id.getNumberOfIds(Link.class)];
+		Arrays.fill(zoneByLinkIndex, NO_ZONE);
+		return zoneByLinkIndex;
+	}
+
+	static private HeadwayZones create(Network network, List<String> zoneIds, int[] zoneByLinkIndex) {
+		int numberOfZones = zoneIds.size();
+
+		double[] sumX = new double[numberOfZones];
+		double[] sumY = new double[numberOfZones];
+		int[] counts = new int[numberOfZones];
+
+		for (Link link : network.getLinks().values()) {
+			int zone = zoneByLinkIndex[link.getId().index()];
+
+			if (zone != NO_ZONE) {
+				sumX[zone] += link.getCoord().getX();
+				sumY[zone] += link.getCoord().getY();
+				counts[zone]++;
+			}
+		}
+
+		Link[] representatives = new Link[numberOfZones];
+		double[] distances = new double[numberOfZones];
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+
+		for (Link link : network.getLinks().values()) {
+			int zone = zoneByLinkIndex[link.getId().index()];
+
+			if (zone != NO_ZONE) {
+				double dx = link.getCoord().getX() - sumX[zone] / counts[zone];
+				double dy = link.getCoord().getY() - sumY[zone] / counts[zone];
+				double distance = dx * dx + dy * dy;
+
+				if (distance < distances[zone]) {
+					distances[zone] = distance;
+					representatives[zone] = link;
+				}
+			}
+		}
+
+		return new HeadwayZones(zoneIds, Arrays.asList(representatives), zoneByLinkIndex);
+	}
+
+	static private class ZoneGeometry {
+		final int index;
+		final IndexedPointInAreaLocator locator;
+
+		ZoneGeometry(int index, IndexedPointInAreaLocator locator) {
+			this.index = index;
+			this.locator = locator;
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package abmt2025.project.utils.headway;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.population.io.StreamingPopulationReader;
+import org.matsim.core.population.io.StreamingPopulationWriter;
+import org.matsim.core.router.LinkWrapperFacility;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.router.TripStructureUtils.Trip;
+
+import com.google.inject.Provider;
+
+/**
+ * Imputes headways while streaming a population from one file to another, so
+ * that memory does not grow with the size of the population.
+ *
+ * The calling thread reads the persons into a bounded queue, worker threads with
+ * their own {@link HeadwayCalculator} impute the headways of all trips of a
+ * person, and a writer thread writes the persons in the order of the input. At most
+ * a fixed number of persons are in flight between reading and writing.
+ * Optionally, the workers share a {@link HeadwayCache}.
+ */
+public class StreamingHeadwayImputer {
+	private static final Logger log = LogManager.getLogger(StreamingHeadwayImputer.class);
+
+	// Marks the end of the input for the workers
+	static private final Item END = new Item(-1, null);
+
+	private final int numberOfThreads;
+	private final int maximumPersonsInFlight;
+	private final boolean replaceExistingHeadways;
+	private final Network network;
+	private final Provider<HeadwayCalculator> calculatorProvider;
+	private final HeadwayCache cache;
+
+	public StreamingHeadwayImputer(int numberOfThreads, int maximumPersonsInFlight, boolean replaceExistingHeadways,
+			Network network, Provider<HeadwayCalculator> calculatorProvider, HeadwayCache cache) {
+		this.numberOfThreads = numberOfThreads;
+		this.maximumPersonsInFlight = maximumPersonsInFlight;
+		this.replaceExistingHeadways = replaceExistingHeadways;
+		this.network = network;
+		this.calculatorProvider = calculatorProvider;
+		this.cache = cache;
+	}
+
+	public void run(Scenario scenario, URL inputUrl, String outputPath) throws InterruptedException {
+		BlockingQueue<Item> inputQueue = new ArrayBlockingQueue<>(maximumPersonsInFlight + numberOfThreads);
+		Semaphore inFlight = new Semaphore(maximumPersonsInFlight);
+		ReorderBuffer outputBuffer = new ReorderBuffer();
+
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		LongAdder numberOfTrips = new LongAdder();
+
+		List<Thread> threads = new ArrayList<>(numberOfThreads + 1);
+
+		for (int i = 0; i < numberOfThreads; i++) {
+			threads.add(new Thread(() -> {
+				HeadwayCalculator calculator = null;
+
+				try {
+					calculator = calculatorProvider.get();
+				} catch (Throwable e) {
+					// Keep taking persons, so that the reader and the writer do not wait forever
+					failure.compareAndSet(null, e);
+				}
+
+				try {
+					Item item;
+
+					while ((item = inputQueue.take()) != END) {
+						try {
+							if (calculator != null) {
+								numberOfTrips.add(impute(item.person, calculator));
+							}
+						} catch (Throwable e) {
+							failure.compareAndSet(null, e);
+						} finally {
+							// Pass the person on anyway, so that the writer does not wait forever
+							outputBuffer.put(item);
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}, "StreamingHeadwayImputer-" + i));
+		}
+
+		Thread writerThread = new Thread(() -> {
+			StreamingPopulationWriter writer = new StreamingPopulationWriter();
+			writer.startStreaming(outputPath);
+
+			try {
+				Person person;
+
+				while ((person = outputBuffer.takeNext()) != null) {
+					writer.run(person);
+					inFlight.release();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Throwable e) {
+				failure.compareAndSet(null, e);
+
+				// Unblock the reader, which stops at the next person
+				inFlight.release(numberOfThreads + 1);
+			} finally {
+				writer.closeStreaming();
+			}
+		}, "StreamingHeadwayImputer-writer");
+
+		threads.add(writerThread);
+
+		long startTime = System.nanoTime();
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+
+		long[] sequence = { 0 };
+
+		try {
+			StreamingPopulationReader reader = new StreamingPopulationReader(scenario);
+			reader.addAlgorithm(person -> {
+				if (failure.get() != null) {
+					throw new RuntimeException("Headway imputation failed", failure.get());
+				}
+
+				try {
+					inFlight.acquire();
+					inputQueue.put(new Item(sequence[0]++, person));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e);
+				}
+
+				if (sequence[0] % 100000 == 0) {
+					log.info("Read {} persons, {} written", sequence[0], outputBuffer.getNumberOfTakenItems());
+				}
+			});
+
+			reader.readURL(inputUrl);
+		} finally {
+			outputBuffer.finish(sequence[0]);
+
+			for (int i = 0; i < numberOfThreads; i++) {
+				inputQueue.put(END);
+			}
+
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		}
+
+		long numberOfPersons = sequence[0];
+
+		if (failure.get() != null) {
+			throw new RuntimeException("Headway imputation failed", failure.get());
+		}
+
+		double runtime_s = 1e-9 * (System.nanoTime() - startTime);
+
+		log.info("Imputed headways for {} trips of {} persons in {} s ({} persons/s, {} trips/s)", numberOfTrips.sum(),
+				numberOfPersons, String.format("%.1f", runtime_s),
+				String.format("%.1f", numberOfPersons / Math.max(runtime_s, 1e-9)),
+				String.format("%.1f", numberOfTrips.sum() / Math.max(runtime_s, 1e-9)));
+
+		if (cache != null) {
+			cache.logStatistics();
+		}
+	}
+
+	private int impute(Person person, HeadwayCalculator calculator) {
+		int numberOfTrips = 0;
+
+		for (Plan plan : person.getPlans()) {
+			for (Trip trip : TripStructureUtils.getTrips(plan)) {
+				Activity originActivity = trip.getOriginActivity();
+
+				if (originActivity.getAttributes().getAttribute("headway_min") == null || replaceExistingHeadways) {
+					Link originLink = network.getLinks().get(originActivity.getLinkId());
+					Link destinationLink = network.getLinks().get(trip.getDestinationActivity().getLinkId());
+					double departureTime = originActivity.getEndTime().seconds();
+
+					double headway_min = cache != null
+							? cache.getHeadway_min(originLink, destinationLink, departureTime, calculator)
+							: calculator.calculateHeadway_min(new LinkWrapperFacility(originLink),
+									new LinkWrapperFacility(destinationLink), departureTime);
+
+					originActivity.getAttributes().putAttribute("headway_min", headway_min);
+					numberOfTrips++;
+				}
+			}
+		}
+
+		return numberOfTrips;
+	}
+
+	static private class Item {
+		final long sequence;
+		final Person person;
+
+		Item(long sequence, Person person) {
+			this.sequence = sequence;
+			this.person = person;
+		}
+	}
+
+	/**
+	 * Hands out the persons in the order in which they were read.
+	 */
+	static private class ReorderBuffer {
+		private final Map<Long, Person> pending = new HashMap<>();
+		private long next = 0;
+		private long total = -1;
+
+		synchronized void put(Item item) {
+			pending.put(item.sequence, item.person);
+
+			if (item.sequence == next) {
+				notifyAll();
+			}
+		}
+
+		synchronized void finish(long numberOfItems) {
+			total = numberOfItems;
+			notifyAll();
+		}
+
+		/**
+		 * Returns the next person in input order, or null after the last one.
+		 */
+		synchronized Person takeNext() throws InterruptedException {
+			while (true) {
+				if (total >= 0 && next >= total) {
+					return null;
+				}
+
+				Person person = pending.remove(next);
+
+				if (person != null) {
+					next++;
+					return person;
+				}
+
+				wait();
+			}
+		}
+
+		synchronized long getNumberOfTakenItems() {
+			return next;
+		}
+	}
+}